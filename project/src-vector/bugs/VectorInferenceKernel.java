@@ -0,0 +1,108 @@
+package bugs;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Solves nets with fused multiply-adds on the widest vectors the machine has, using the incubating
+// Vector API. Every weighted sum is a dot product over contiguous parameters: each hidden node's
+// input weights, then each output's hidden weights. Lanes are summed at the end, so results differ
+// from ScalarInferenceKernel's in the last few bits. Genomes kept as floats get twice as many
+// lanes.
+//
+// This source folder needs Java 16 or later and --add-modules jdk.incubator.vector to compile and
+// run, which the rest of the program does not, so InferenceKernel only loads this class by name.
+class VectorInferenceKernel implements InferenceKernel {
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+  private static final int NUM_INPUTS = NeuralNet.NUM_INPUTS;
+  private static final int NUM_OUTPUTS = NeuralNet.NUM_OUTPUTS;
+
+  @Override
+  public void solve(
+      double[] inputs,
+      int inputOffset,
+      double[] parameters,
+      int numHidden,
+      double[] hidden,
+      double[] outputs,
+      int outputOffset) {
+    int hiddenBiases = Genome.getHiddenBiasesOffset(numHidden);
+    int outputWeights = Genome.getOutputWeightsOffset(numHidden);
+    int outputBiases = Genome.getOutputBiasesOffset(numHidden);
+
+    for (int j = 0; j < numHidden; j++) {
+      double value = dot(inputs, inputOffset, parameters, j * NUM_INPUTS, NUM_INPUTS);
+      hidden[j] = Math.max(0, value + parameters[hiddenBiases + j]);
+    }
+
+    for (int k = 0; k < NUM_OUTPUTS; k++) {
+      double value = dot(hidden, 0, parameters, outputWeights + (k * numHidden), numHidden);
+      outputs[outputOffset + k] = value + parameters[outputBiases + k];
+    }
+  }
+
+  @Override
+  public void solve(
+      float[] inputs,
+      int inputOffset,
+      float[] parameters,
+      int numHidden,
+      float[] hidden,
+      double[] outputs,
+      int outputOffset) {
+    int hiddenBiases = Genome.getHiddenBiasesOffset(numHidden);
+    int outputWeights = Genome.getOutputWeightsOffset(numHidden);
+    int outputBiases = Genome.getOutputBiasesOffset(numHidden);
+
+    for (int j = 0; j < numHidden; j++) {
+      float value = dot(inputs, inputOffset, parameters, j * NUM_INPUTS, NUM_INPUTS);
+      hidden[j] = Math.max(0.0f, value + parameters[hiddenBiases + j]);
+    }
+
+    for (int k = 0; k < NUM_OUTPUTS; k++) {
+      float value = dot(hidden, 0, parameters, outputWeights + (k * numHidden), numHidden);
+      outputs[outputOffset + k] = value + parameters[outputBiases + k];
+    }
+  }
+
+  private static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+    int i = 0;
+    double sum = 0.0;
+    int bound = SPECIES.loopBound(length);
+    if (bound > 0) {
+      DoubleVector sums = DoubleVector.zero(SPECIES);
+      for (; i < bound; i += SPECIES.length()) {
+        sums =
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                .fma(DoubleVector.fromArray(SPECIES, b, bOffset + i), sums);
+      }
+      sum = sums.reduceLanes(VectorOperators.ADD);
+    }
+    // Whatever is left over is shorter than a vector
+    for (; i < length; i++) {
+      sum = Math.fma(a[aOffset + i], b[bOffset + i], sum);
+    }
+    return sum;
+  }
+
+  private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+    int i = 0;
+    float sum = 0.0f;
+    int bound = FLOAT_SPECIES.loopBound(length);
+    if (bound > 0) {
+      FloatVector sums = FloatVector.zero(FLOAT_SPECIES);
+      for (; i < bound; i += FLOAT_SPECIES.length()) {
+        sums =
+            FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i)
+                .fma(FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i), sums);
+      }
+      sum = sums.reduceLanes(VectorOperators.ADD);
+    }
+    for (; i < length; i++) {
+      sum = Math.fma(a[aOffset + i], b[bOffset + i], sum);
+    }
+    return sum;
+  }
+}
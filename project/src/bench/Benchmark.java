@@ -0,0 +1,29 @@
+package bench;
+
+// One benchmark case. The runner calls setUpIteration() before each iteration, untimed, and then
+// calls run() repeatedly for the length of the iteration. Each call to run() is one operation.
+public abstract class Benchmark {
+  private final String name_;
+
+  protected Benchmark(String name) {
+    name_ = name;
+  }
+
+  public String getName() {
+    return name_;
+  }
+
+  // Benchmarks that use up their state (e.g. a population that shrinks as it ticks) can rebuild it
+  // here
+  protected void setUpIteration() {}
+
+  // Upper bound on the operations in one iteration, for benchmarks whose state drifts the longer
+  // they run
+  protected int getMaxOpsPerIteration() {
+    return Integer.MAX_VALUE;
+  }
+
+  // Returns something derived from the work done, which the runner consumes so that the JIT cannot
+  // eliminate the work
+  protected abstract double run();
+}
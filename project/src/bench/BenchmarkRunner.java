@@ -0,0 +1,142 @@
+package bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+// Runs benchmarks with warmup, then reports the time per operation along with how much was
+// allocated and how much the garbage collector ran while measuring.
+//
+// Allocation is summed over every live thread, so work handed to a thread pool is counted, but
+// work done by threads that exit while measuring is not.
+public class BenchmarkRunner {
+  private final int warmupIterations_;
+  private final int measurementIterations_;
+  private final long iterationNanos_;
+
+  private final List<GarbageCollectorMXBean> gcBeans_ =
+      ManagementFactory.getGarbageCollectorMXBeans();
+  private final com.sun.management.ThreadMXBean threadBean_;
+
+  // Keeps results of the benchmarks alive
+  private volatile double sink_;
+
+  public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+    warmupIterations_ = warmupIterations;
+    measurementIterations_ = measurementIterations;
+    iterationNanos_ = iterationMillis * 1_000_000;
+
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+      threadBean_ = (com.sun.management.ThreadMXBean) threadBean;
+      threadBean_.setThreadAllocatedMemoryEnabled(true);
+    } else {
+      threadBean_ = null;
+    }
+  }
+
+  public static void printHeader() {
+    System.out.println(
+        String.format(
+            "%-36s %14s %12s %14s %6s %8s",
+            "Benchmark", "ns/op", "+-", "alloc B/op", "gcs", "gc ms"));
+  }
+
+  public void run(Benchmark benchmark) {
+    for (int i = 0; i < warmupIterations_; i++) {
+      runIteration(benchmark);
+    }
+
+    double[] nanosPerOp = new double[measurementIterations_];
+    long ops = 0;
+    long allocatedBytes = 0;
+    long gcCount = 0;
+    long gcMillis = 0;
+    for (int i = 0; i < measurementIterations_; i++) {
+      long gcCountBefore = getGcCount();
+      long gcMillisBefore = getGcMillis();
+      long allocatedBefore = getAllocatedBytes();
+
+      Iteration iteration = runIteration(benchmark);
+
+      allocatedBytes += getAllocatedBytes() - allocatedBefore;
+      gcCount += getGcCount() - gcCountBefore;
+      gcMillis += getGcMillis() - gcMillisBefore;
+      ops += iteration.ops_;
+      nanosPerOp[i] = (double) iteration.nanos_ / iteration.ops_;
+    }
+
+    double mean = 0.0;
+    for (double value : nanosPerOp) {
+      mean += value;
+    }
+    mean /= nanosPerOp.length;
+    double variance = 0.0;
+    for (double value : nanosPerOp) {
+      variance += (value - mean) * (value - mean);
+    }
+    double stdDev = nanosPerOp.length > 1 ? Math.sqrt(variance / (nanosPerOp.length - 1)) : 0.0;
+
+    String allocated =
+        threadBean_ == null ? "n/a" : String.format("%.1f", (double) allocatedBytes / ops);
+    System.out.println(
+        String.format(
+            "%-36s %14.1f %12.1f %14s %6d %8d",
+            benchmark.getName(), mean, stdDev, allocated, gcCount, gcMillis));
+  }
+
+  private static class Iteration {
+    private final long ops_;
+    private final long nanos_;
+
+    private Iteration(long ops, long nanos) {
+      ops_ = ops;
+      nanos_ = nanos;
+    }
+  }
+
+  private Iteration runIteration(Benchmark benchmark) {
+    benchmark.setUpIteration();
+    int maxOps = benchmark.getMaxOpsPerIteration();
+    double sum = 0.0;
+    long ops = 0;
+    long start = System.nanoTime();
+    long now = start;
+    // Always run at least one operation, however slow it is
+    do {
+      sum += benchmark.run();
+      ops++;
+      now = System.nanoTime();
+    } while (now - start < iterationNanos_ && ops < maxOps);
+    sink_ += sum;
+    return new Iteration(ops, now - start);
+  }
+
+  private long getGcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean bean : gcBeans_) {
+      count += Math.max(0, bean.getCollectionCount());
+    }
+    return count;
+  }
+
+  private long getGcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean bean : gcBeans_) {
+      millis += Math.max(0, bean.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private long getAllocatedBytes() {
+    if (threadBean_ == null) {
+      return 0;
+    }
+    long total = 0;
+    for (long bytes : threadBean_.getThreadAllocatedBytes(threadBean_.getAllThreadIds())) {
+      total += Math.max(0, bytes);
+    }
+    return total;
+  }
+}
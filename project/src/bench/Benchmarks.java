@@ -0,0 +1,392 @@
+package bench;
+
+import bugs.BatchedInference;
+import bugs.BugController;
+import bugs.BugController.TickCompletedMessage;
+import bugs.BugPopulation;
+import bugs.BugType;
+import bugs.EngineOptions.InferenceKernelType;
+import bugs.EngineOptions.SensorAccuracy;
+import bugs.GameStates;
+import bugs.Genome;
+import bugs.InferenceKernel;
+import bugs.NeuralNet;
+import bugs.SensorMath;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import utils.IncrementalGrid2d;
+import utils.KDTree2d;
+import utils.NearestResult;
+import utils.ParallelRangeExecutor;
+import utils.RandomStream;
+import utils.SpatialIndex;
+import utils.UniformGrid2d;
+
+// Benchmarks for the hot paths of the simulation. Every input is generated from a fixed seed, so
+// runs on the same machine measure the same work.
+//
+// Usage: Benchmarks [filter]
+//   filter  only run benchmarks whose name contains this string
+public class Benchmarks {
+  private static final long SEED = 0x5eedL;
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int MEASUREMENT_ITERATIONS = 5;
+  private static final long ITERATION_MILLIS = 1000;
+
+  private static final int[] INDEX_SIZES = {1_000, 10_000, 100_000};
+  private static final int[] POPULATION_SIZES = {200, 1_000, 5_000};
+  // Roughly how crowded the board gets in a normal run
+  private static final double BOARD_AREA_PER_BUG = 3000.0;
+  // Ticks per iteration of the tick benchmarks. Random bugs die off quickly, so the population is
+  // rebuilt every iteration and only ticked a few times.
+  private static final int TICKS_PER_ITERATION = 10;
+  private static final long MILLIS_PER_TICK = 1000 / 60;
+
+  public static void main(String[] args) {
+    String filter = args.length > 0 ? args[0] : "";
+    GameStates.initialize();
+
+    List<Benchmark> benchmarks = new ArrayList<>();
+    for (int size : INDEX_SIZES) {
+      benchmarks.add(new IndexBuild("kdTree.build", size, false));
+      benchmarks.add(new IndexQuery("kdTree.findNearest", size, false));
+      benchmarks.add(new IndexBuild("grid.build", size, true));
+      benchmarks.add(new IndexQuery("grid.findNearest", size, true));
+      benchmarks.add(new IndexUpdate(size));
+    }
+    for (int hidden = NeuralNet.HIDDEN_LAYER_SIZE_LOWER_BOUND;
+        hidden <= NeuralNet.HIDDEN_LAYER_SIZE_UPPER_BOUND;
+        hidden++) {
+      benchmarks.add(new SolveNet(hidden));
+    }
+    for (SensorAccuracy accuracy : SensorAccuracy.values()) {
+      benchmarks.add(new Sense(accuracy));
+    }
+    benchmarks.add(new GenomeCrossover());
+    benchmarks.add(new GenomeCopy());
+    for (int size : POPULATION_SIZES) {
+      for (InferenceKernelType type : InferenceKernelType.values()) {
+        // Kernels which cannot run here are left out
+        InferenceKernel kernel = InferenceKernel.load(type);
+        if (kernel != null) {
+          benchmarks.add(new Inference(size, type, kernel));
+        }
+      }
+      benchmarks.add(new Tick(size, false));
+      benchmarks.add(new Tick(size, true));
+    }
+
+    System.out.println(
+        String.format(
+            "Java %s, %d processors, seed %d",
+            System.getProperty("java.version"),
+            Runtime.getRuntime().availableProcessors(),
+            SEED));
+    BenchmarkRunner runner =
+        new BenchmarkRunner(WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, ITERATION_MILLIS);
+    BenchmarkRunner.printHeader();
+    for (Benchmark benchmark : benchmarks) {
+      if (benchmark.getName().contains(filter)) {
+        runner.run(benchmark);
+      }
+    }
+    System.exit(0);
+  }
+
+  // Genomes with random weights and the given hidden layer size
+  private static Genome makeGenome(RandomStream random, int numHidden) {
+    Genome genome = new Genome(random);
+    while (genome.getNumHiddenNodes() != numHidden) {
+      genome = new Genome(random);
+    }
+    return genome;
+  }
+
+  // -- Spatial index --
+
+  private static class Points {
+    private final double[] xs_;
+    private final double[] ys_;
+    private final int[] tags_;
+
+    // Uniformly spread over a square board as crowded as a normal run
+    private Points(int count, RandomStream random) {
+      double side = Math.sqrt(count * BOARD_AREA_PER_BUG);
+      xs_ = new double[count];
+      ys_ = new double[count];
+      tags_ = new int[count];
+      for (int i = 0; i < count; i++) {
+        xs_[i] = random.nextDouble() * side;
+        ys_[i] = random.nextDouble() * side;
+        tags_[i] = random.nextInt(2);
+      }
+    }
+
+    private SpatialIndex build(boolean grid) {
+      if (grid) {
+        return UniformGrid2d.build(xs_, ys_, tags_, xs_.length, GameStates.getBugRadius() * 2.0);
+      }
+      return KDTree2d.build(xs_, ys_, tags_, xs_.length);
+    }
+  }
+
+  private static class IndexBuild extends Benchmark {
+    private final Points points_;
+    private final boolean grid_;
+
+    private IndexBuild(String name, int size, boolean grid) {
+      super(name + " " + size);
+      points_ = new Points(size, new RandomStream(SEED));
+      grid_ = grid;
+    }
+
+    @Override
+    protected double run() {
+      return points_.build(grid_).size();
+    }
+  }
+
+  private static class IndexQuery extends Benchmark {
+    private final SpatialIndex index_;
+    private final Points queries_;
+    private final NearestResult result_ = new NearestResult();
+    private int next_;
+
+    // One operation is a single query, at each of the existing points in turn
+    private IndexQuery(String name, int size, boolean grid) {
+      super(name + " " + size);
+      queries_ = new Points(size, new RandomStream(SEED));
+      index_ = queries_.build(grid);
+    }
+
+    @Override
+    protected double run() {
+      int i = next_;
+      next_ = (next_ + 1) % queries_.xs_.length;
+      index_.findNearest(queries_.xs_[i], queries_.ys_[i], true, result_);
+      return result_.getDistanceSquared();
+    }
+  }
+
+  private static class IndexUpdate extends Benchmark {
+    // About how far a bug moves in one tick
+    private static final double STEP = 2.0;
+
+    private final Points points_;
+    private final double side_;
+    private final IncrementalGrid2d index_;
+    private final RandomStream random_ = new RandomStream(SEED);
+
+    // One operation nudges every point and applies the moves to the grid, which is what a tick does
+    // in place of index.build
+    private IndexUpdate(int size) {
+      super("incrementalGrid.update " + size);
+      points_ = new Points(size, new RandomStream(SEED));
+      side_ = Math.sqrt(size * BOARD_AREA_PER_BUG);
+      index_ = new IncrementalGrid2d(side_, side_, GameStates.getBugRadius() * 2.0);
+      for (int i = 0; i < size; i++) {
+        index_.put(i, i, points_.xs_[i], points_.ys_[i], points_.tags_[i]);
+      }
+      index_.rebalance();
+    }
+
+    @Override
+    protected double run() {
+      for (int i = 0; i < points_.xs_.length; i++) {
+        double x = points_.xs_[i] + ((random_.nextDouble() - 0.5) * STEP);
+        double y = points_.ys_[i] + ((random_.nextDouble() - 0.5) * STEP);
+        points_.xs_[i] = Math.max(0.0, Math.min(side_, x));
+        points_.ys_[i] = Math.max(0.0, Math.min(side_, y));
+        index_.put(i, i, points_.xs_[i], points_.ys_[i], points_.tags_[i]);
+      }
+      index_.rebalance();
+      return index_.size();
+    }
+  }
+
+  // -- Nets --
+
+  private static class SolveNet extends Benchmark {
+    private final NeuralNet net_;
+    private final double[] inputs_ = new double[NeuralNet.NUM_INPUTS];
+
+    private SolveNet(int numHidden) {
+      super("neuralNet.solveNet " + numHidden);
+      RandomStream random = new RandomStream(SEED);
+      net_ = new NeuralNet(makeGenome(random, numHidden));
+      for (int i = 0; i < inputs_.length; i++) {
+        inputs_[i] = random.nextDouble();
+      }
+    }
+
+    @Override
+    protected double run() {
+      net_.setLayerValues(0, inputs_);
+      net_.solveNet();
+      return net_.getResultLayer()[0];
+    }
+  }
+
+  private static class Inference extends Benchmark {
+    private final BugPopulation population_ = new BugPopulation(1000, 1000);
+    private final BatchedInference inference_;
+    private final ParallelRangeExecutor executor_ = new ParallelRangeExecutor(256);
+
+    // One operation solves every net in the population
+    private Inference(int size, InferenceKernelType type, InferenceKernel kernel) {
+      super("inference.batched." + type.name().toLowerCase() + " " + size);
+      inference_ = new BatchedInference(kernel);
+      RandomStream random = new RandomStream(SEED);
+      for (int i = 0; i < size; i++) {
+        int row = population_.add(BugType.TRADITIONAL, 0, 0, 0, new Genome(random), false);
+        for (int k = 0; k < NeuralNet.NUM_INPUTS; k++) {
+          population_.getInputs()[(row * NeuralNet.NUM_INPUTS) + k] = random.nextDouble();
+        }
+      }
+    }
+
+    @Override
+    protected double run() {
+      inference_.evaluate(population_, executor_);
+      return inference_.getOutputs()[0];
+    }
+  }
+
+  // -- Sensing --
+
+  private static class Sense extends Benchmark {
+    private static final int NUM_BUGS = 4096;
+
+    private final SensorMath sensorMath_;
+    private final Points bugs_;
+    private final Points nearest_;
+    private final int side_;
+    private final double[] inputs_ = new double[NeuralNet.NUM_INPUTS];
+    private int next_;
+
+    // One operation senses the inputs of one bug, with a random bug nearby
+    private Sense(SensorAccuracy accuracy) {
+      super("sensor.sense " + accuracy.name().toLowerCase());
+      sensorMath_ = new SensorMath(accuracy);
+      RandomStream random = new RandomStream(SEED);
+      bugs_ = new Points(NUM_BUGS, random);
+      nearest_ = new Points(NUM_BUGS, random);
+      side_ = (int) Math.sqrt(NUM_BUGS * BOARD_AREA_PER_BUG);
+    }
+
+    @Override
+    protected double run() {
+      int i = next_;
+      next_ = (next_ + 1) % NUM_BUGS;
+      double x = bugs_.xs_[i];
+      double y = bugs_.ys_[i];
+      // Within a few bug lengths, as the nearest bug usually is
+      double otherX = x + ((nearest_.xs_[i] / side_) - 0.5) * 100.0;
+      double otherY = y + ((nearest_.ys_[i] / side_) - 0.5) * 100.0;
+      double dx = otherX - x;
+      double dy = otherY - y;
+      sensorMath_.sense(
+          side_,
+          side_,
+          x,
+          y,
+          otherX,
+          otherY,
+          (dx * dx) + (dy * dy),
+          bugs_.tags_[i] == nearest_.tags_[i],
+          inputs_,
+          0);
+      return inputs_[4];
+    }
+  }
+
+  // -- Genomes --
+
+  private static class GenomeCrossover extends Benchmark {
+    private final Genome parent1_;
+    private final Genome parent2_;
+    private final RandomStream random_ = new RandomStream(SEED);
+
+    private GenomeCrossover() {
+      super("genome.crossover");
+      parent1_ = new Genome(random_);
+      parent2_ = new Genome(random_);
+    }
+
+    @Override
+    protected double run() {
+      return new Genome(parent1_, parent2_, random_).getNumHiddenNodes();
+    }
+  }
+
+  private static class GenomeCopy extends Benchmark {
+    private final Genome genome_ = new Genome(new RandomStream(SEED));
+
+    private GenomeCopy() {
+      super("genome.copy");
+    }
+
+    @Override
+    protected double run() {
+      return new Genome(genome_).getNumHiddenNodes();
+    }
+  }
+
+  // -- Whole ticks --
+
+  private static class Tick extends Benchmark {
+    private final int size_;
+    private final boolean publish_;
+    private BugController controller_;
+
+    // With publish set, a subscriber is attached so that every tick also publishes a frame. The
+    // difference from the same size without it is the cost of publishing.
+    private Tick(int size, boolean publish) {
+      super((publish ? "controller.tickAndPublish " : "controller.tick ") + size);
+      size_ = size;
+      publish_ = publish;
+    }
+
+    @Override
+    protected void setUpIteration() {
+      int side = (int) Math.sqrt(size_ * BOARD_AREA_PER_BUG);
+      controller_ = new BugController(side, side, SEED);
+      controller_.addRandomBugs(BugType.TRADITIONAL, size_ - (size_ / 10), true);
+      controller_.addRandomBugs(BugType.KILLER, size_ / 10, true);
+      if (publish_) {
+        controller_.getTickCompletedPublisher().subscribe(new DiscardingSubscriber());
+      }
+    }
+
+    @Override
+    protected int getMaxOpsPerIteration() {
+      return TICKS_PER_ITERATION;
+    }
+
+    @Override
+    protected double run() {
+      controller_.tick(MILLIS_PER_TICK);
+      return controller_.getBugCount(BugType.TRADITIONAL);
+    }
+  }
+
+  private static class DiscardingSubscriber implements Subscriber<TickCompletedMessage> {
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(TickCompletedMessage message) {
+      message.frame.release();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {}
+
+    @Override
+    public void onComplete() {}
+  }
+}
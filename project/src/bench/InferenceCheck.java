@@ -0,0 +1,119 @@
+package bench;
+
+import bugs.BatchedInference;
+import bugs.BugPopulation;
+import bugs.BugType;
+import bugs.EngineOptions.InferenceKernelType;
+import bugs.Genome;
+import bugs.InferenceKernel;
+import bugs.NeuralNet;
+import java.util.Arrays;
+import utils.ParallelRangeExecutor;
+import utils.RandomStream;
+
+// Checks every inference kernel that can run here against NeuralNet.solveNet(), over a population
+// of random genomes of every hidden layer size and random inputs. SCALAR must match exactly; other
+// kernels add up their sums in a different order, so they must only match to within TOLERANCE of
+// the size of the terms summed. Exits with status 1 if any kernel does not match.
+//
+// Genomes are kept in the precision set at launch. With -Dneuralnodes.precision=single, kernels
+// solve nets in float while solveNet() still works in double, so every kernel is only held to
+// SINGLE_TOLERANCE.
+//
+// Usage: InferenceCheck [bugs]
+public class InferenceCheck {
+  private static final long SEED = 0x5eedL;
+  private static final int DEFAULT_BUGS = 20_000;
+  private static final double TOLERANCE = 1e-12;
+  // A few dozen float roundings, each up to 2^-24 of the terms involved
+  private static final double SINGLE_TOLERANCE = 1e-5;
+
+  public static void main(String[] args) {
+    int numBugs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BUGS;
+    RandomStream random = new RandomStream(SEED);
+    BugPopulation population = new BugPopulation(1000, 1000);
+    for (int i = 0; i < numBugs; i++) {
+      int row = population.add(BugType.TRADITIONAL, 0, 0, 0, new Genome(random), false);
+      for (int k = 0; k < NeuralNet.NUM_INPUTS; k++) {
+        // Bugs sense distances and directions, so inputs can be large and of either sign
+        population.getInputs()[(row * NeuralNet.NUM_INPUTS) + k] =
+            (random.nextDouble() - 0.5) * 2000.0;
+      }
+    }
+
+    // What every kernel must match
+    double[] expected = new double[numBugs * NeuralNet.NUM_OUTPUTS];
+    double[] scales = new double[numBugs * NeuralNet.NUM_OUTPUTS];
+    for (int row = 0; row < numBugs; row++) {
+      double[] inputs =
+          Arrays.copyOfRange(
+              population.getInputs(),
+              row * NeuralNet.NUM_INPUTS,
+              (row + 1) * NeuralNet.NUM_INPUTS);
+      Genome genome = population.getGenome(row);
+      NeuralNet net = new NeuralNet(genome);
+      net.setLayerValues(0, inputs);
+      net.solveNet();
+      System.arraycopy(
+          net.getResultLayer(), 0, expected, row * NeuralNet.NUM_OUTPUTS, NeuralNet.NUM_OUTPUTS);
+      for (int k = 0; k < NeuralNet.NUM_OUTPUTS; k++) {
+        scales[(row * NeuralNet.NUM_OUTPUTS) + k] = outputScale(genome, inputs, k);
+      }
+    }
+
+    boolean allMatch = true;
+    ParallelRangeExecutor executor = new ParallelRangeExecutor(256);
+    for (InferenceKernelType type : InferenceKernelType.values()) {
+      InferenceKernel kernel = InferenceKernel.load(type);
+      if (kernel == null) {
+        System.out.println(type + ": not available here, skipped");
+        continue;
+      }
+      BatchedInference inference = new BatchedInference(kernel);
+      inference.evaluate(population, executor);
+      double[] outputs = inference.getOutputs();
+
+      double tolerance;
+      if (Genome.isSinglePrecision()) {
+        tolerance = SINGLE_TOLERANCE;
+      } else {
+        tolerance = type == InferenceKernelType.SCALAR ? 0.0 : TOLERANCE;
+      }
+      double maxError = 0.0;
+      int mismatches = 0;
+      for (int i = 0; i < expected.length; i++) {
+        double error = Math.abs(outputs[i] - expected[i]);
+        double allowed = tolerance * scales[i];
+        maxError = Math.max(maxError, error / Math.max(scales[i], Double.MIN_NORMAL));
+        if (!(error <= allowed)) {
+          mismatches++;
+        }
+      }
+      System.out.println(
+          String.format(
+              "%s, %s precision: %d of %d outputs differ, largest relative error %.3g",
+              type,
+              Genome.isSinglePrecision() ? "single" : "double",
+              mismatches,
+              expected.length,
+              maxError));
+      allMatch &= mismatches == 0;
+    }
+    System.exit(allMatch ? 0 : 1);
+  }
+
+  // Sum of the magnitudes of every term added up to make output k, which bounds how far rounding
+  // in a different order can move it
+  private static double outputScale(Genome genome, double[] inputs, int output) {
+    int numHidden = genome.getNumHiddenNodes();
+    double scale = Math.abs(genome.getBiasAt(2, output));
+    for (int j = 0; j < numHidden; j++) {
+      double hiddenScale = Math.abs(genome.getBiasAt(1, j));
+      for (int i = 0; i < NeuralNet.NUM_INPUTS; i++) {
+        hiddenScale += Math.abs(inputs[i] * genome.getWeightAt(0, i, j));
+      }
+      scale += hiddenScale * Math.abs(genome.getWeightAt(1, j, output));
+    }
+    return scale;
+  }
+}
@@ -0,0 +1,129 @@
+package bench;
+
+import bugs.EngineOptions.SensorAccuracy;
+import bugs.GameStates;
+import bugs.NeuralNet;
+import bugs.SensorMath;
+import utils.RandomStream;
+
+// Checks every approximate SensorAccuracy against EXACT, and reports how far off each one is: the
+// sigmoid over every argument that matters, the angle in every direction, and every input of bugs
+// at random places in a world with their nearest bug at a random distance and direction. Exits
+// with status 1 if any input is further off than the accuracy promises.
+//
+// Usage: SensorCheck [samples]
+public class SensorCheck {
+  private static final long SEED = 0x5eedL;
+  private static final int DEFAULT_SAMPLES = 2_000_000;
+  private static final int WIDTH = 1600;
+  private static final int HEIGHT = 1000;
+  // Well past where the distance sigmoid reaches 0
+  private static final double MAX_DISTANCE = 400.0;
+  private static final String[] INPUT_NAMES = {
+    "rightWall", "topWall", "leftWall", "bottomWall",
+    "rightEye", "topEye", "leftEye", "bottomEye",
+    "same", "different"
+  };
+
+  public static void main(String[] args) {
+    int numSamples = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+    GameStates.initialize();
+    SensorMath exact = new SensorMath(SensorAccuracy.EXACT);
+    double tightness = GameStates.getBugRadius() * .02;
+
+    boolean allWithin = true;
+    for (SensorAccuracy accuracy : SensorAccuracy.values()) {
+      if (accuracy == SensorAccuracy.EXACT) {
+        continue;
+      }
+      SensorMath approximate = new SensorMath(accuracy);
+
+      // Steps of a tenth of a bug radius, from far below the center of the step to far above it
+      double sigmoidError = 0.0;
+      for (int i = -100_000; i <= 100_000; i++) {
+        double x = i * GameStates.getBugRadius() * 0.1;
+        for (boolean forwards : new boolean[] {true, false}) {
+          sigmoidError =
+              Math.max(
+                  sigmoidError,
+                  Math.abs(
+                      approximate.sigmoid(forwards, tightness, 0.0, x)
+                          - exact.sigmoid(forwards, tightness, 0.0, x)));
+        }
+      }
+
+      // 0 and 2 * PI are the same direction
+      double angleError = 0.0;
+      for (int i = 0; i < 1_000_000; i++) {
+        double direction = (2.0 * Math.PI * i) / 1_000_000;
+        double dx = Math.cos(direction);
+        double dy = Math.sin(direction);
+        double error = Math.abs(approximate.angle(dy, dx) - exact.angle(dy, dx));
+        angleError = Math.max(angleError, Math.min(error, (2.0 * Math.PI) - error));
+      }
+
+      double[] inputErrors = compareInputs(exact, approximate, numSamples);
+      double maxInputError = 0.0;
+      StringBuilder perInput = new StringBuilder();
+      for (int k = 0; k < NeuralNet.NUM_INPUTS; k++) {
+        maxInputError = Math.max(maxInputError, inputErrors[k]);
+        perInput.append(String.format("%n  %-10s %.3g", INPUT_NAMES[k], inputErrors[k]));
+      }
+
+      double bound = getBound(accuracy);
+      boolean within = maxInputError <= bound;
+      System.out.println(
+          String.format(
+              "%s: sigmoid off by up to %.3g, angle by up to %.3g radians, inputs by up to %.3g"
+                  + " (%s %.0e)%s",
+              accuracy,
+              sigmoidError,
+              angleError,
+              maxInputError,
+              within ? "within" : "NOT within",
+              bound,
+              perInput));
+      allWithin &= within;
+    }
+    System.exit(allWithin ? 0 : 1);
+  }
+
+  // Largest difference from EXACT in each input, over numSamples random bugs
+  private static double[] compareInputs(SensorMath exact, SensorMath approximate, int numSamples) {
+    RandomStream random = new RandomStream(SEED);
+    double radius = GameStates.getBugRadius();
+    double[] expected = new double[NeuralNet.NUM_INPUTS];
+    double[] actual = new double[NeuralNet.NUM_INPUTS];
+    double[] errors = new double[NeuralNet.NUM_INPUTS];
+    for (int i = 0; i < numSamples; i++) {
+      double x = radius + (random.nextDouble() * (WIDTH - (2.0 * radius)));
+      double y = radius + (random.nextDouble() * (HEIGHT - (2.0 * radius)));
+      double distance = random.nextDouble() * MAX_DISTANCE;
+      double direction = random.nextDouble() * 2.0 * Math.PI;
+      double otherX = x + (Math.cos(direction) * distance);
+      double otherY = y + (Math.sin(direction) * distance);
+      double distanceSquared = ((otherX - x) * (otherX - x)) + ((otherY - y) * (otherY - y));
+      boolean sameType = random.nextInt(2) == 0;
+
+      exact.sense(WIDTH, HEIGHT, x, y, otherX, otherY, distanceSquared, sameType, expected, 0);
+      approximate.sense(WIDTH, HEIGHT, x, y, otherX, otherY, distanceSquared, sameType, actual, 0);
+      for (int k = 0; k < NeuralNet.NUM_INPUTS; k++) {
+        errors[k] = Math.max(errors[k], Math.abs(actual[k] - expected[k]));
+      }
+    }
+    return errors;
+  }
+
+  // What SensorMath promises for each accuracy
+  private static double getBound(SensorAccuracy accuracy) {
+    switch (accuracy) {
+      case FINE:
+        return 1e-5;
+      case COARSE:
+        return 1e-3;
+      case EXACT:
+      default:
+        return 0.0;
+    }
+  }
+}
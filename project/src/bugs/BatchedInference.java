@@ -0,0 +1,144 @@
+package bugs;
+
+import bugs.EngineOptions.InferenceKernelType;
+import java.util.Arrays;
+import utils.ParallelRangeExecutor;
+
+// Solves the nets of a whole population at once. Every net has NUM_INPUTS inputs and NUM_OUTPUTS
+// outputs, and only the size of the hidden layer varies, so rows are bucketed by hidden layer size
+// and each bucket is evaluated in one tight loop over the population's input matrix and each
+// genome's packed parameters (see Genome.getParameters()). Each net is solved by an
+// InferenceKernel, picked with -Dneuralnodes.inference.
+//
+// With the SCALAR kernel and genomes kept as doubles, the results match NeuralNet.solveNet()
+// exactly: sums are accumulated in the same order. Genomes kept as floats are solved in float, from
+// the inputs rounded to float.
+public class BatchedInference {
+  private static final int NUM_INPUTS = NeuralNet.NUM_INPUTS;
+  private static final int NUM_OUTPUTS = NeuralNet.NUM_OUTPUTS;
+  private static final int MAX_HIDDEN = NeuralNet.HIDDEN_LAYER_SIZE_UPPER_BOUND;
+  private static final InferenceKernel DEFAULT_KERNEL = loadDefaultKernel();
+
+  private final InferenceKernel kernel_;
+
+  // Rows of the population, grouped by hidden layer size
+  private int[] order_ = new int[0];
+  // Rows with h hidden nodes are order_[bucketStart_[h]] to order_[bucketStart_[h + 1] - 1]
+  private final int[] bucketStart_ = new int[MAX_HIDDEN + 2];
+  // NUM_OUTPUTS values per row
+  private double[] outputs_ = new double[0];
+  // The population's inputs rounded to float, NUM_INPUTS per row. Only used for genomes kept as
+  // floats.
+  private float[] floatInputs_ = new float[0];
+
+  public BatchedInference() {
+    this(DEFAULT_KERNEL);
+  }
+
+  public BatchedInference(InferenceKernel kernel) {
+    kernel_ = kernel;
+  }
+
+  private static InferenceKernel loadDefaultKernel() {
+    InferenceKernelType type = EngineOptions.getInferenceKernelType();
+    InferenceKernel kernel = InferenceKernel.load(type);
+    if (kernel == null) {
+      System.err.println(
+          "Inference kernel "
+              + type
+              + " is not available, using SCALAR. It needs Java 16 or later, "
+              + "--add-modules jdk.incubator.vector and the src-vector classes.");
+      kernel = InferenceKernel.load(InferenceKernelType.SCALAR);
+    }
+    return kernel;
+  }
+
+  // Fills getOutputs() with the result of every row's net, using the inputs the rows sensed this
+  // tick
+  public void evaluate(BugPopulation population, ParallelRangeExecutor executor) {
+    int size = population.size();
+    if (order_.length < size) {
+      order_ = new int[size];
+      outputs_ = new double[size * NUM_OUTPUTS];
+      if (Genome.isSinglePrecision()) {
+        floatInputs_ = new float[size * NUM_INPUTS];
+      }
+    }
+
+    // Counting sort of rows by hidden layer size
+    Arrays.fill(bucketStart_, 0);
+    for (int row = 0; row < size; row++) {
+      bucketStart_[population.getGenome(row).getNumHiddenNodes() + 1]++;
+    }
+    for (int h = 0; h <= MAX_HIDDEN; h++) {
+      bucketStart_[h + 1] += bucketStart_[h];
+    }
+    int[] next = Arrays.copyOf(bucketStart_, MAX_HIDDEN + 1);
+    for (int row = 0; row < size; row++) {
+      order_[next[population.getGenome(row).getNumHiddenNodes()]++] = row;
+    }
+
+    executor.forRange("inference", size, (start, end) -> evaluateRange(population, start, end));
+  }
+
+  // NUM_OUTPUTS values per row, valid until the next call to evaluate()
+  public double[] getOutputs() {
+    return outputs_;
+  }
+
+  // [start, end) is a range of order_, which may span several buckets
+  private void evaluateRange(BugPopulation population, int start, int end) {
+    double[] hiddenValues = new double[MAX_HIDDEN];
+    float[] floatHiddenValues = new float[MAX_HIDDEN];
+    int h = 0;
+    int i = start;
+    while (i < end) {
+      while (bucketStart_[h + 1] <= i) {
+        h++;
+      }
+      int bucketEnd = Math.min(end, bucketStart_[h + 1]);
+      if (Genome.isSinglePrecision()) {
+        evaluateFloatBucket(population, h, i, bucketEnd, floatHiddenValues);
+      } else {
+        evaluateBucket(population, h, i, bucketEnd, hiddenValues);
+      }
+      i = bucketEnd;
+    }
+  }
+
+  private void evaluateBucket(
+      BugPopulation population, int numHidden, int start, int end, double[] hiddenValues) {
+    double[] inputs = population.getInputs();
+    for (int i = start; i < end; i++) {
+      int row = order_[i];
+      kernel_.solve(
+          inputs,
+          row * NUM_INPUTS,
+          population.getGenome(row).getParameters(),
+          numHidden,
+          hiddenValues,
+          outputs_,
+          row * NUM_OUTPUTS);
+    }
+  }
+
+  private void evaluateFloatBucket(
+      BugPopulation population, int numHidden, int start, int end, float[] hiddenValues) {
+    double[] inputs = population.getInputs();
+    for (int i = start; i < end; i++) {
+      int row = order_[i];
+      int input = row * NUM_INPUTS;
+      for (int k = 0; k < NUM_INPUTS; k++) {
+        floatInputs_[input + k] = (float) inputs[input + k];
+      }
+      kernel_.solve(
+          floatInputs_,
+          input,
+          population.getGenome(row).getFloatParameters(),
+          numHidden,
+          hiddenValues,
+          outputs_,
+          row * NUM_OUTPUTS);
+    }
+  }
+}
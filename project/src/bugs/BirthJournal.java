@@ -0,0 +1,209 @@
+package bugs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import metrics.Counter;
+import metrics.Metrics;
+import utils.SpscRingBuffer;
+
+// Append-only log of every bug born, for studying evolution offline. The tick thread hands each
+// birth to a bounded lock-free queue, and a dedicated writer thread drains it into a buffer that is
+// written out in large batches. If the writer falls so far behind that the queue fills, births are
+// dropped from the log (and counted) rather than ever making the tick wait on the disk.
+//
+// The log is a directory of segments named births-NNNNNN.log. A new segment is started once the
+// current one passes the size limit, and every run starts a new segment after any already there,
+// so nothing is ever overwritten. Each segment starts with an int MAGIC and an int VERSION,
+// followed by records, big endian:
+//   int   length of the rest of the record, in bytes
+//   int   world, counting resets
+//   int   round the bug was born in
+//   long  id of the bug (see BugController.nextBugId())
+//   long  ids of its two parents, or -1 for bugs with no parents
+//   byte  BugType ordinal
+//   genome, as written by Genome.writeTo
+public class BirthJournal {
+  private static final int MAGIC = 0x4e4e424a; // "NNBJ"
+  private static final int VERSION = 1;
+  private static final int QUEUE_CAPACITY = 1 << 16;
+  private static final int BATCH_BYTES = 1 << 20;
+  // How long the writer sleeps when there is nothing to write
+  private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+  private static final int RECORD_HEADER_BYTES = (3 * Integer.BYTES) + (3 * Long.BYTES) + 1;
+
+  private static final Counter RECORDED = Metrics.counter("birth_journal_recorded");
+  private static final Counter DROPPED = Metrics.counter("birth_journal_dropped");
+
+  private static class Entry {
+    private final int world_;
+    private final int round_;
+    private final long id_;
+    private final long parent1_;
+    private final long parent2_;
+    private final BugType type_;
+    // Genomes never change, so the writer can read this whenever it gets to it
+    private final Genome genome_;
+
+    private Entry(
+        int world, int round, long id, long parent1, long parent2, BugType type, Genome genome) {
+      world_ = world;
+      round_ = round;
+      id_ = id;
+      parent1_ = parent1;
+      parent2_ = parent2;
+      type_ = type;
+      genome_ = genome;
+    }
+  }
+
+  private final Path directory_;
+  private final long maxSegmentBytes_;
+  private final SpscRingBuffer<Entry> queue_ = new SpscRingBuffer<>(QUEUE_CAPACITY);
+  private final Thread writer_;
+  private volatile boolean closed_;
+
+  // -- Only used by the writer thread --
+  private final ByteBuffer batch_ = ByteBuffer.allocateDirect(BATCH_BYTES);
+  private int nextSegment_;
+  private FileChannel segment_;
+  private long segmentBytes_;
+
+  // Starts a writer thread logging to a new segment in directory, which is created if needed. The
+  // journal is closed, writing out anything still queued, when the program exits.
+  public BirthJournal(Path directory, long maxSegmentBytes) throws IOException {
+    directory_ = directory;
+    maxSegmentBytes_ = maxSegmentBytes;
+    Files.createDirectories(directory);
+    nextSegment_ = findNextSegment(directory);
+    openNextSegment();
+
+    writer_ = new Thread(this::runWriter, "birth-journal-writer");
+    writer_.setDaemon(true);
+    writer_.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "birth-journal-close"));
+  }
+
+  private static int findNextSegment(Path directory) throws IOException {
+    int next = 0;
+    try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "births-*.log")) {
+      for (Path segment : segments) {
+        String name = segment.getFileName().toString();
+        try {
+          int number = Integer.parseInt(name.substring("births-".length(), name.length() - 4));
+          next = Math.max(next, number + 1);
+        } catch (NumberFormatException e) {
+          // Not one of ours
+        }
+      }
+    }
+    return next;
+  }
+
+  // Tick thread only. Never blocks: if the queue is full, the birth is dropped from the log.
+  public void record(
+      int world, int round, long id, long parent1, long parent2, BugType type, Genome genome) {
+    if (closed_) {
+      return;
+    }
+    if (queue_.offer(new Entry(world, round, id, parent1, parent2, type, genome))) {
+      RECORDED.increment();
+    } else {
+      DROPPED.increment();
+    }
+  }
+
+  // Stops taking births, and waits a while for the writer to write out the ones already queued
+  public void close() {
+    if (closed_) {
+      return;
+    }
+    closed_ = true;
+    LockSupport.unpark(writer_);
+    try {
+      writer_.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runWriter() {
+    try {
+      while (true) {
+        Entry entry = queue_.poll();
+        if (entry != null) {
+          append(entry);
+          continue;
+        }
+        // Nothing queued: write out what has built up, then wait for more
+        flush();
+        if (closed_ && queue_.isEmpty()) {
+          break;
+        }
+        LockSupport.parkNanos(IDLE_NANOS);
+      }
+    } catch (IOException e) {
+      System.err.println("Birth journal stopped: " + e);
+      closed_ = true;
+    } finally {
+      try {
+        segment_.close();
+      } catch (IOException e) {
+        System.err.println("Could not close birth journal segment: " + e);
+      }
+    }
+  }
+
+  private void append(Entry entry) throws IOException {
+    int length = RECORD_HEADER_BYTES - Integer.BYTES + entry.genome_.getSerializedSize();
+    if (batch_.remaining() < Integer.BYTES + length) {
+      flush();
+    }
+    batch_.putInt(length);
+    batch_.putInt(entry.world_);
+    batch_.putInt(entry.round_);
+    batch_.putLong(entry.id_);
+    batch_.putLong(entry.parent1_);
+    batch_.putLong(entry.parent2_);
+    batch_.put((byte) entry.type_.ordinal());
+    entry.genome_.writeTo(batch_);
+  }
+
+  private void flush() throws IOException {
+    if (batch_.position() == 0) {
+      return;
+    }
+    batch_.flip();
+    // Batches only hold whole records, so rotating between batches never splits one
+    if (segmentBytes_ + batch_.remaining() > maxSegmentBytes_
+        && segmentBytes_ > (2 * Integer.BYTES)) {
+      segment_.close();
+      openNextSegment();
+    }
+    while (batch_.hasRemaining()) {
+      segmentBytes_ += segment_.write(batch_);
+    }
+    batch_.clear();
+  }
+
+  private void openNextSegment() throws IOException {
+    Path path = directory_.resolve(String.format("births-%06d.log", nextSegment_++));
+    segment_ =
+        FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.flip();
+    while (header.hasRemaining()) {
+      segment_.write(header);
+    }
+    segmentBytes_ = header.capacity();
+  }
+}
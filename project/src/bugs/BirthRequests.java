@@ -0,0 +1,142 @@
+package bugs;
+
+import java.util.Arrays;
+import utils.ParallelRangeExecutor;
+import utils.RandomStream;
+
+// Bugs waiting to be born at the end of a tick. Requests are collected on the tick thread, then
+// build() makes every newborn's genome and color in parallel, and finally the controller places
+// each one on the board in the order the requests were made.
+//
+// Each request carries the newborn's own random stream, so what gets built does not depend on which
+// thread builds it.
+class BirthRequests {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int size_;
+  // BugType ordinals
+  private int[] types_ = new int[INITIAL_CAPACITY];
+  // What each newborn's id will be
+  private long[] ids_ = new long[INITIAL_CAPACITY];
+  // Rows of the parents in the population, or -1 for bugs with no parents
+  private int[] parents1_ = new int[INITIAL_CAPACITY];
+  private int[] parents2_ = new int[INITIAL_CAPACITY];
+  private boolean[] initialBatch_ = new boolean[INITIAL_CAPACITY];
+  private RandomStream[] randoms_ = new RandomStream[INITIAL_CAPACITY];
+  // Filled in by build(), except for migrants, which arrive with theirs
+  private Genome[] genomes_ = new Genome[INITIAL_CAPACITY];
+  private int[] colors_ = new int[INITIAL_CAPACITY];
+
+  int size() {
+    return size_;
+  }
+
+  void clear() {
+    // Do not hold on to streams or genomes once they are placed
+    Arrays.fill(randoms_, 0, size_, null);
+    Arrays.fill(genomes_, 0, size_, null);
+    size_ = 0;
+  }
+
+  // A child of the bugs in rows parent1 and parent2
+  void addChild(BugType type, int parent1, int parent2, long id, RandomStream random) {
+    add(type, parent1, parent2, false, id, random);
+  }
+
+  // A bug with a random genome and color
+  void addRandom(BugType type, boolean isInitialBatch, long id, RandomStream random) {
+    add(type, -1, -1, isInitialBatch, id, random);
+  }
+
+  // A bug arriving from another world, with its genome and color already made
+  void addMigrant(Migrant migrant, long id) {
+    add(migrant.getType(), -1, -1, false, id, null);
+    genomes_[size_ - 1] = migrant.getGenome();
+    colors_[size_ - 1] = migrant.getColor();
+  }
+
+  private void add(
+      BugType type,
+      int parent1,
+      int parent2,
+      boolean isInitialBatch,
+      long id,
+      RandomStream random) {
+    if (size_ == types_.length) {
+      int capacity = size_ * 2;
+      types_ = Arrays.copyOf(types_, capacity);
+      ids_ = Arrays.copyOf(ids_, capacity);
+      parents1_ = Arrays.copyOf(parents1_, capacity);
+      parents2_ = Arrays.copyOf(parents2_, capacity);
+      initialBatch_ = Arrays.copyOf(initialBatch_, capacity);
+      randoms_ = Arrays.copyOf(randoms_, capacity);
+      genomes_ = Arrays.copyOf(genomes_, capacity);
+      colors_ = Arrays.copyOf(colors_, capacity);
+    }
+    types_[size_] = type.ordinal();
+    ids_[size_] = id;
+    parents1_[size_] = parent1;
+    parents2_[size_] = parent2;
+    initialBatch_[size_] = isInitialBatch;
+    randoms_[size_] = random;
+    size_++;
+  }
+
+  // Makes the genome and color of every request. Only reads the parents' rows of the population,
+  // so it must run before anything is added to or removed from it.
+  void build(BugPopulation population, ParallelRangeExecutor executor) {
+    executor.forRange("genomes", size_, (start, end) -> buildRange(population, start, end));
+  }
+
+  private void buildRange(BugPopulation population, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (genomes_[i] != null) {
+        continue;
+      }
+      RandomStream random = randoms_[i];
+      if (hasParents(i)) {
+        colors_[i] =
+            Bug.mixColors(
+                population.getColor(parents1_[i]), population.getColor(parents2_[i]), random);
+        genomes_[i] =
+            new Genome(
+                population.getGenome(parents1_[i]), population.getGenome(parents2_[i]), random);
+      } else {
+        colors_[i] = Bug.randomColor(random);
+        genomes_[i] = new Genome(random);
+      }
+    }
+  }
+
+  BugType getType(int i) {
+    return BugType.fromOrdinal(types_[i]);
+  }
+
+  long getId(int i) {
+    return ids_[i];
+  }
+
+  boolean hasParents(int i) {
+    return parents1_[i] >= 0;
+  }
+
+  int getParent1(int i) {
+    return parents1_[i];
+  }
+
+  int getParent2(int i) {
+    return parents2_[i];
+  }
+
+  boolean isInitialBatch(int i) {
+    return initialBatch_[i];
+  }
+
+  Genome getGenome(int i) {
+    return genomes_[i];
+  }
+
+  int getColor(int i) {
+    return colors_[i];
+  }
+}
@@ -1,261 +1,247 @@
 package bugs;
 
-import java.awt.Color;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import utils.ConcurrentTimers;
-import utils.KDTree2d;
-import utils.Sizes;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import utils.NearestResult;
+import utils.RandomStream;
+import utils.SpatialIndex;
 import utils.Vector2d;
 
+// The behavior of one species of bug. The state of each individual bug lives in a BugPopulation
+// row, so subclasses are stateless and every hook is handed the population and row to work on.
 public abstract class Bug {
-  public static final ExecutorService SHARED_BUG_TICK_EXECUTOR = Executors.newWorkStealingPool();
-
   //    public static final double BUG_RADIUS_SQUARED = Math.pow(BUG_RADIUS, 2.0);
-  private static final double EYE_CONE_ANGLE =
-      180.0 * (Math.PI / 180.0); // Find a good minimum for this
   private static final double TIME_DIVISOR = 30.0;
+  private static final SensorMath SENSOR_MATH = new SensorMath(EngineOptions.getSensorAccuracy());
+
+  // Per bug: looking up the nearest bug, turning what it sees into inputs, and moving
+  private static final LatencyHistogram FIND_NEAREST_TIMES = Metrics.histogram("bug_find_nearest");
+  private static final LatencyHistogram SENSE_TIMES = Metrics.histogram("bug_sense");
+  private static final LatencyHistogram MOVE_TIMES = Metrics.histogram("bug_move");
+
+  private static final Bug[] SPECIES = {new TraditionalBug(), new KillerBug()};
+
+  public static Bug of(BugType type) {
+    return SPECIES[type.ordinal()];
+  }
+
+  public abstract BugType getBugType();
 
-  private Vector2d position_;
-  private final Color color_;
-  private double reproductionScore_ = 0;
-  private final Genome genome_;
-  private final NeuralNet net_;
-  private boolean isAlive_ = true;
-
-  public Bug(Vector2d position) {
-    position_ = position;
-    fixPosition();
-    color_ =
-        new Color(
-            BugController.SHARED_RANDOM.nextFloat(),
-            BugController.SHARED_RANDOM.nextFloat(),
-            BugController.SHARED_RANDOM.nextFloat());
-    genome_ = new Genome();
-    net_ = new NeuralNet(genome_);
+  private static int packColor(int red, int green, int blue) {
+    return (red << 16) | (green << 8) | blue;
   }
 
-  public Bug(Bug other) {
-    position_ = new Vector2d(other.position_);
-    color_ = new Color(other.color_.getRGB());
-    reproductionScore_ = other.reproductionScore_;
-    genome_ = other.genome_;
-    net_ = new NeuralNet(other.net_);
-    isAlive_ = other.isAlive_;
+  static int randomColor(RandomStream random) {
+    return packColor(random.nextInt(256), random.nextInt(256), random.nextInt(256));
   }
 
-  public Bug(Bug bug1, Bug bug2, Vector2d position) {
-    position_ = position;
+  private static int mixColorChannel(int color1, int color2, int shift, RandomStream random) {
+    int mixed = (((color1 >> shift) & 0xFF) + ((color2 >> shift) & 0xFF)) / 2;
+    // A little bit of variation
+    return Math.min(255, Math.max(0, mixed + (random.nextInt(11) - 5)));
+  }
 
-    double choice = BugController.SHARED_RANDOM.nextDouble();
+  static int mixColors(int color1, int color2, RandomStream random) {
+    double choice = random.nextDouble();
     if (choice <= 0.95) {
-      Color mixed =
-          new Color(
-              (bug1.getColor().getRed() + bug2.getColor().getRed()) / 2,
-              (bug1.getColor().getGreen() + bug2.getColor().getGreen()) / 2,
-              (bug1.getColor().getBlue() + bug2.getColor().getBlue()) / 2);
-      // A little bit of variation
-      color_ =
-          new Color(
-              Math.min(
-                  255, Math.max(0, mixed.getRed() + (BugController.SHARED_RANDOM.nextInt(11) - 5))),
-              Math.min(
-                  255,
-                  Math.max(0, mixed.getGreen() + (BugController.SHARED_RANDOM.nextInt(11) - 5))),
-              Math.min(
-                  255,
-                  Math.max(0, mixed.getBlue() + (BugController.SHARED_RANDOM.nextInt(11) - 5))));
+      return packColor(
+          mixColorChannel(color1, color2, 16, random),
+          mixColorChannel(color1, color2, 8, random),
+          mixColorChannel(color1, color2, 0, random));
     } else {
-      color_ =
-          new Color(
-              BugController.SHARED_RANDOM.nextFloat(),
-              BugController.SHARED_RANDOM.nextFloat(),
-              BugController.SHARED_RANDOM.nextFloat());
+      return randomColor(random);
     }
-
-    genome_ = new Genome(bug1.genome_, bug2.genome_);
-    net_ = new NeuralNet(genome_);
   }
 
-  @Override
-  public abstract Bug clone();
+  // Adds a bug with no parents to the population, returning its row
+  public int addRandomBug(
+      BugPopulation population,
+      Vector2d position,
+      int color,
+      Genome genome,
+      boolean isInitialBatch) {
+    int row =
+        population.add(
+            getBugType(), position.getX(), position.getY(), color, genome, isInitialBatch);
+    fixPosition(population, row);
+    return row;
+  }
 
-  public abstract BugType getBugType();
+  // Adds a bug born by reproduction to the population, returning its row
+  public int addChild(BugPopulation population, Vector2d position, int color, Genome genome) {
+    // Bugs from reproduction are never from initial batch
+    return population.add(getBugType(), position.getX(), position.getY(), color, genome, false);
+  }
 
-  private void fixPosition() {
-    Vector2d boardSize = Sizes.getBoardSize();
-    position_.setX(
+  private static void fixPosition(BugPopulation population, int row) {
+    population.setX(
+        row,
         Math.max(
             GameStates.getBugRadius(),
-            Math.min(boardSize.getX() - GameStates.getBugRadius(), position_.getX())));
-    position_.setY(
+            Math.min(population.getWidth() - GameStates.getBugRadius(), population.getX(row))));
+    population.setY(
+        row,
         Math.max(
             GameStates.getBugRadius(),
-            Math.min(boardSize.getY() - GameStates.getBugRadius(), position_.getY())));
-  }
-
-  public Vector2d getPosition() {
-    return position_;
+            Math.min(population.getHeight() - GameStates.getBugRadius(), population.getY(row))));
   }
 
-  public Color getColor() {
-    return color_;
-  }
-
-  public double getReproductionScore() {
-    return reproductionScore_;
+  // A tick happens in three phases: every bug senses its surroundings into the population's input
+  // matrix, BatchedInference solves all of the nets at once, and then every bug moves according to
+  // its net's outputs. Rows only write to their own columns, so disjoint ranges of rows can run
+  // each phase concurrently.
+
+  // First phase of a tick, for the rows [start, end)
+  public static void senseBugs(
+      BugPopulation population, int start, int end, SpatialIndex bugIndex, long millisElapsed) {
+    // One holder per range, reused by every bug in it, keeps the neighbor search allocation-free
+    NearestResult otherBug = new NearestResult();
+    for (int row = start; row < end; row++) {
+      senseBug(population, row, bugIndex, millisElapsed, otherBug);
+    }
   }
 
-  public boolean isAlive() {
-    return isAlive_;
+  // Last phase of a tick, for the rows [start, end). `outputs` holds NeuralNet.NUM_OUTPUTS values
+  // per row.
+  public static void moveBugs(
+      BugPopulation population, int start, int end, double[] outputs, long millisElapsed) {
+    for (int row = start; row < end; row++) {
+      moveBug(population, row, outputs, millisElapsed);
+    }
   }
 
-  public NeuralNet getNeuralNet() {
-    return new NeuralNet(net_);
+  private static void senseBug(
+      BugPopulation population,
+      int row,
+      SpatialIndex bugIndex,
+      long millisElapsed,
+      NearestResult otherBug) {
+    long start = FIND_NEAREST_TIMES.start();
+    Bug species = of(population.getType(row));
+    species.onTickStart(population, row, millisElapsed);
+
+    int width = population.getWidth();
+    int height = population.getHeight();
+    double x = population.getX(row);
+    double y = population.getY(row);
+
+    // Locations in the index are copies. Ok to look into them while multithreading
+    boolean found = bugIndex.findNearest(x, y, true, otherBug);
+    FIND_NEAREST_TIMES.stop(start);
+    start = SENSE_TIMES.start();
+
+    if (found) {
+      BugType otherBugType = BugType.fromOrdinal(otherBug.getTag());
+      // must be calculated before any movement
+      population.setNearestBug(
+          row,
+          otherBugType,
+          otherBug.getDistanceSquared() < (GameStates.getBugRadiusSquared() * 4.0));
+
+      // The rest of the inputs: walls, eyes and the type of the nearest bug
+      SENSOR_MATH.sense(
+          width,
+          height,
+          x,
+          y,
+          otherBug.getX(),
+          otherBug.getY(),
+          otherBug.getDistanceSquared(),
+          species.getBugType() == otherBugType,
+          population.getInputs(),
+          row * NeuralNet.NUM_INPUTS);
+    } else {
+      // Alone on the board, so there is nothing to touch, and only the walls to see. An infinitely
+      // distant bug sends every eye and both type inputs to 0.
+      population.setNearestBug(row, species.getBugType(), false);
+      SENSOR_MATH.sense(
+          width,
+          height,
+          x,
+          y,
+          x,
+          y,
+          Double.POSITIVE_INFINITY,
+          true,
+          population.getInputs(),
+          row * NeuralNet.NUM_INPUTS);
+    }
+    SENSE_TIMES.stop(start);
   }
 
-  private static double sigmoid(boolean forwards, double tightness, double xCenter, double x) {
-    double sig = 1.0 / (1.0 + Math.exp(-1.0 * tightness * (x - xCenter)));
-    if (!forwards) {
-      sig = 1 - sig;
+  private static void moveBug(
+      BugPopulation population, int row, double[] outputs, long millisElapsed) {
+    long start = MOVE_TIMES.start();
+    Bug species = of(population.getType(row));
+    int width = population.getWidth();
+    int height = population.getHeight();
+
+    double movementAngle = outputs[row * NeuralNet.NUM_OUTPUTS];
+    double rawSpeed = outputs[(row * NeuralNet.NUM_OUTPUTS) + 1];
+    double outAngle = movementAngle * 2.0 * Math.PI;
+    double speed = rawSpeed * 5.0;
+
+    double timeScale = (millisElapsed) / TIME_DIVISOR;
+    double x = population.getX(row) + ((Math.cos(outAngle) * speed) * timeScale);
+    double y = population.getY(row) + ((Math.sin(outAngle) * speed) * timeScale);
+    population.setX(row, x);
+    population.setY(row, y);
+
+    // Death conditions
+    boolean outOfBoundsX =
+        x < GameStates.getBugRadius() || x > (width - GameStates.getBugRadius());
+    boolean outOfBoundsY =
+        y < GameStates.getBugRadius() || y > (height - GameStates.getBugRadius());
+    if (outOfBoundsX || outOfBoundsY) {
+      population.kill(row);
+    } else if (species.killedByBug(
+        population, row, population.isTouchingNearestBug(row), population.getNearestBugType(row))) {
+      population.kill(row);
+    } else if (species.killedBySpeed(population, row, rawSpeed)) {
+      population.kill(row);
+    } else {
+      // should be unnecessary since this is now a death condition
+      fixPosition(population, row);
     }
-    return sig;
-  }
 
-  public Future<?> tickBug(KDTree2d<BugType> bugTree, long millisElapsed) {
-    return SHARED_BUG_TICK_EXECUTOR.submit(
-        () -> {
-          ConcurrentTimers.Checkpoint checkpoint = new ConcurrentTimers.Checkpoint();
-          onTickStart(millisElapsed);
-
-          Vector2d boardSize = Sizes.getBoardSize();
-
-          // Bugs in trees are copies. Ok to look into them while multithreading
-          KDTree2d<BugType>.LocationAndData otherBugData =
-              bugTree.findNearestExcludingSame(position_);
-          checkpoint = ConcurrentTimers.addToTimer("BugSolve1", checkpoint);
-          Vector2d otherBugPos = otherBugData.getLocation();
-
-          // must be calculated before any movement
-          boolean touchingOtherBug =
-              position_.subtract(otherBugPos).normSquared()
-                  < (GameStates.getBugRadiusSquared() * 4.0);
-
-          double sigmoidTightness = GameStates.getBugRadius() * .02;
-          double sigmoidRange = GameStates.getBugRadius() * 5;
-
-          // First four inputs are closeness to walls
-          double leftWall = sigmoid(false, sigmoidTightness, sigmoidRange, position_.getX());
-          double rightWall =
-              sigmoid(true, sigmoidTightness, boardSize.getX() - sigmoidRange, position_.getX());
-          double bottomWall = sigmoid(false, sigmoidTightness, sigmoidRange, position_.getY());
-          double topWall =
-              sigmoid(true, sigmoidTightness, boardSize.getY() - sigmoidRange, position_.getY());
-
-          // Next four inputs are four "eyes" with cones pointing right, up, left, and
-          // down. The value input to the neurons corresponding to these cones is the
-          // product of a sigmoid based on distance, and a falloff function based on angle
-          // away from the center of the cone
-          Vector2d toOtherBug = otherBugPos.subtract(position_);
-          double distance = toOtherBug.norm();
-          double distanceSigmoid = sigmoid(false, sigmoidTightness, sigmoidRange, distance);
-          Vector2d dirToOtherBug = toOtherBug.normalize();
-          double angle = Math.atan2(dirToOtherBug.getY(), dirToOtherBug.getX());
-          if (angle < 0) {
-            angle += (2 * Math.PI);
-          }
-
-          double rightEye = Math.max(0, 1.0 - (Math.abs(angle - 0.0) / (EYE_CONE_ANGLE / 2.0)));
-          rightEye +=
-              Math.max(0, 1.0 - (Math.abs(angle - (2.0 * Math.PI)) / (EYE_CONE_ANGLE / 2.0)));
-          double topEye =
-              Math.max(0, 1.0 - (Math.abs(angle - (Math.PI / 2.0)) / (EYE_CONE_ANGLE / 2.0)));
-          double leftEye = Math.max(0, 1.0 - (Math.abs(angle - Math.PI) / (EYE_CONE_ANGLE / 2.0)));
-          double bottomEye =
-              Math.max(0, 1.0 - (Math.abs(angle - (3.0 * Math.PI / 2.0)) / (EYE_CONE_ANGLE / 2.0)));
-
-          rightEye *= distanceSigmoid;
-          topEye *= distanceSigmoid;
-          leftEye *= distanceSigmoid;
-          bottomEye *= distanceSigmoid;
-
-          // Next two correspond to same and other nodes. One spikes if the closest node
-          // is of the same type, and the other spikes is the approacher is different
-          double same = getBugType() == otherBugData.getData() ? distanceSigmoid : 0.0;
-          double different = getBugType() != otherBugData.getData() ? distanceSigmoid : 0.0;
-
-          checkpoint = ConcurrentTimers.addToTimer("BugSolve2", checkpoint);
-
-          net_.setLayerValues(
-              0,
-              new double[] {
-                rightWall,
-                topWall,
-                leftWall,
-                bottomWall,
-                rightEye,
-                topEye,
-                leftEye,
-                bottomEye,
-                same,
-                different
-              });
-          net_.solveNet();
-
-          checkpoint = ConcurrentTimers.addToTimer("BugSolve3", checkpoint);
-
-          double[] movement = net_.getResultLayer();
-          double outAngle = movement[0] * 2.0 * Math.PI;
-          Vector2d movementVec = new Vector2d(Math.cos(outAngle), Math.sin(outAngle));
-          movementVec = movementVec.scale(movement[1] * 5.0);
-
-          double timeScale = (millisElapsed) / TIME_DIVISOR;
-          position_ = position_.add(movementVec.scale(timeScale));
-
-          // Death conditions
-          boolean outOfBoundsX =
-              position_.getX() < GameStates.getBugRadius()
-                  || position_.getX() > (boardSize.getX() - GameStates.getBugRadius());
-          boolean outOfBoundsY =
-              position_.getY() < GameStates.getBugRadius()
-                  || position_.getY() > (boardSize.getY() - GameStates.getBugRadius());
-          if (outOfBoundsX || outOfBoundsY) {
-            isAlive_ = false;
-          } else if (killedByBug(touchingOtherBug, otherBugData.getData())) {
-            isAlive_ = false;
-          } else if (killedBySpeed(movement[1])) {
-            isAlive_ = false;
-          } else {
-            // should be unnecessary since this is now a death condition
-            fixPosition();
-          }
-
-          checkpoint = ConcurrentTimers.addToTimer("BugSolve4", checkpoint);
-        });
+    MOVE_TIMES.stop(start);
   }
 
   // Subclasses must override this to calculate a new reproduction score after all bugs have ticked
-  protected abstract double calculateReproductionScore();
+  protected abstract double calculateReproductionScore(BugPopulation population, int row);
+
+  public static void updateReproductionScore(BugPopulation population, int row) {
+    population.setReproductionScore(
+        row, of(population.getType(row)).calculateReproductionScore(population, row));
+  }
 
-  public void updateReproductionScore() {
-    reproductionScore_ = calculateReproductionScore();
+  // Subclasses can override this if a bug may die between ticks for reasons other than the tick
+  // itself
+  public boolean isAlive(BugPopulation population, int row) {
+    return population.isAlive(row);
   }
 
   // Subclasses can override this if they need to do something at the beginning of
   // the tick
-  protected void onTickStart(long millisElapsed) {}
+  protected void onTickStart(BugPopulation population, int row, long millisElapsed) {
+    population.addMillisAlive(row, millisElapsed);
+  }
 
   // Subclasses can override this if they need to do something after reproducing
-  protected void updateStateAfterReproduction() {}
+  protected void updateStateAfterReproduction(BugPopulation population, int row) {}
+
+  public static void onReproduced(BugPopulation population, int row) {
+    of(population.getType(row)).updateStateAfterReproduction(population, row);
+  }
 
   // Subclasses can override this if they might die by movement speed
-  protected boolean killedBySpeed(double rawSpeed) {
+  protected boolean killedBySpeed(BugPopulation population, int row, double rawSpeed) {
     return false;
   }
 
   // Subclasses can override this if they might die by neighbor intersections
-  protected boolean killedByBug(boolean touchingClosestBug, BugType closestBugType) {
+  protected boolean killedByBug(
+      BugPopulation population, int row, boolean touchingClosestBug, BugType closestBugType) {
     return false;
   }
 }
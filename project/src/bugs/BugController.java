@@ -1,56 +1,217 @@
 package bugs;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.Queue;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Flow.Publisher;
-import java.util.concurrent.Future;
 import java.util.concurrent.SubmissionPublisher;
-import java.util.function.BiFunction;
-import java.util.function.Function;
-import utils.ConcurrentTimers;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import utils.IncrementalGrid2d;
 import utils.KDTree2d;
-import utils.Pair;
-import utils.Sizes;
+import utils.OccupancyGrid;
+import utils.ParallelRangeExecutor;
+import utils.RandomStream;
+import utils.SpatialIndex;
+import utils.UniformGrid2d;
 import utils.Vector2d;
+import utils.WeightedSampler;
 
 public class BugController {
-  public static final Random SHARED_RANDOM = new Random();
+  private static final ParallelRangeExecutor TICK_EXECUTOR =
+      new ParallelRangeExecutor(EngineOptions.getTickGrainSize());
+  private static final ParallelRangeExecutor BIRTH_EXECUTOR =
+      new ParallelRangeExecutor(EngineOptions.getBirthGrainSize());
+
+  // Checkpoints are encoded and written one at a time, off the tick thread
+  private static final ExecutorService CHECKPOINT_WRITER =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private static final LatencyHistogram BUG_SOLVE_TIMES = Metrics.histogram("tick_bug_solves");
+  private static final LatencyHistogram INFERENCE_TIMES = Metrics.histogram("tick_inference");
+  private static final LatencyHistogram UPDATE_LISTS_TIMES =
+      Metrics.histogram("tick_update_lists");
+  private static final LatencyHistogram PUBLISH_TIMES = Metrics.histogram("tick_publish");
+  private static final Counter TICKS = Metrics.counter("ticks");
+  private static final Counter BIRTHS = Metrics.counter("births");
+  private static final Counter DEATHS = Metrics.counter("deaths");
+  private static final LatencyHistogram CHECKPOINT_CAPTURE_TIMES =
+      Metrics.histogram("checkpoint_capture");
+  private static final LatencyHistogram CHECKPOINT_WRITE_TIMES =
+      Metrics.histogram("checkpoint_write");
+
+  // Key of the bug streams among the children of a world's stream
+  private static final long BUG_STREAMS = 1;
 
   private static final int START_BUGS = 100; // Need some genetic diversity as a seed
   private static final BugCountConfig TRADITIONAL_BUG_COUNTS =
       new BugCountConfig(START_BUGS, 4, 10000);
   private static final BugCountConfig KILLER_BUG_COUNTS = new BugCountConfig(START_BUGS, 4, 10000);
 
-  private final Timer timer_;
+  private final int boardWidth_;
+  private final int boardHeight_;
+  // Each reset starts a new world, with streams derived from this one and the number of resets so
+  // far
+  private final RandomStream masterRandom_;
+  private int numResets_;
+  // For decisions made by the world as a whole, such as picking parents and locations. Only used on
+  // the tick thread.
+  private RandomStream random_;
+  // Every bug gets its own stream, derived from this one and the number of bugs born before it, so
+  // that bugs can be created on any thread without sharing a stream
+  private RandomStream bugRandoms_;
+  private long numBirths_;
+  // Logs every birth, or null
+  private final BirthJournal birthJournal_;
+  // Where to save the world every EngineOptions.getCheckpointInterval() ticks, or null
+  private final Path checkpointFile_;
+  private int ticksSinceCheckpoint_;
+  // Number of ticks in which each type, by BugType ordinal, had to be topped up with random bugs.
+  // Not checkpointed.
+  private final int[] ticksBelowMinimum_ = new int[BugType.values().length];
+  // Tick, counting from 1, at the end of which each type first had no living bugs left, or -1.
+  // Not checkpointed.
+  private final long[] firstExtinctionTicks_ = new long[BugType.values().length];
+  // Only set once start() has been called
+  private Timer timer_;
   private int round_;
   private long currMillis_;
 
-  List<TraditionalBug> traditionalBugList_;
-  List<KillerBug> killerBugList_;
-  // bugTree_ needs to hold clones of the bugs in the above lists, otherwise there
-  // may be race conditions while all the bugs are
-  // updating against each other. If they are stored as clones, all the bugs are
-  // updating agains the previous state.
-  KDTree2d<BugType> bugTree_;
-  List<Bug> bugsWhichReproducedThisRound_;
+  BugPopulation population_;
+  // bugIndex_ needs to hold copies of the bug locations in population_, otherwise there may be race
+  // conditions while all the bugs are updating against each other. If they are stored as copies,
+  // all the bugs are updating agains the previous state. It is built once per tick, after all
+  // births, and is read-only while the bugs tick.
+  SpatialIndex bugIndex_;
+  // Only used with the INCREMENTAL_GRID index, in which case it is also bugIndex_. Bugs are keyed
+  // by genome slot, which stays the same for as long as the bug lives.
+  private IncrementalGrid2d incrementalIndex_;
+  final BatchedInference inference_ = new BatchedInference();
+  // Picks parents for requestNewBugs(), rebuilt for each type every round
+  private final WeightedSampler parentSampler_ = new WeightedSampler();
+  private double[] parentWeights_ = new double[0];
+  private final int[] parents_ = new int[2];
+  private final BirthRequests birthRequests_ = new BirthRequests();
+  // Where new bugs can be placed. Rebuilt from population_ before each round of births, and kept
+  // up to date as each new bug is placed.
+  private final OccupancyGrid freeSpace_ = new OccupancyGrid();
+  // Rows of population_, in pairs of parents
+  List<Integer> bugsWhichReproducedThisRound_;
   SubmissionPublisher<TickCompletedMessage> tickCompletedPublisher_;
+  // Frames which every subscriber has released, ready to be filled again
+  private final Queue<BugFrame> framePool_ = new ConcurrentLinkedQueue<>();
+
+  // The controller does nothing until it is ticked, either by calling start() to tick in real time
+  // or by calling tick() directly
+  public BugController(int boardWidth, int boardHeight) {
+    this(boardWidth, boardHeight, EngineOptions.getSeed());
+  }
+
+  public BugController(int boardWidth, int boardHeight, long seed) {
+    this(
+        boardWidth,
+        boardHeight,
+        seed,
+        EngineOptions.getBirthJournalDirectory(),
+        EngineOptions.getCheckpointFile());
+  }
+
+  // Either of birthJournalDirectory and checkpointFile may be null, to not log births or save
+  // checkpoints. Worlds running side by side in one program need their own of each.
+  BugController(
+      int boardWidth,
+      int boardHeight,
+      long seed,
+      Path birthJournalDirectory,
+      Path checkpointFile) {
+    boardWidth_ = boardWidth;
+    boardHeight_ = boardHeight;
+    masterRandom_ = new RandomStream(seed);
+    numResets_ = 0;
+    birthJournal_ = openBirthJournal(birthJournalDirectory);
+    checkpointFile_ = checkpointFile;
 
-  public BugController() {
     reset();
 
     tickCompletedPublisher_ = new SubmissionPublisher<>();
+  }
+
+  // Resumes the world saved in a checkpoint, which then ticks on exactly as the original would
+  // have. Sets the game states to the ones saved with it.
+  public BugController(Checkpoint checkpoint) {
+    boardWidth_ = checkpoint.getBoardWidth();
+    boardHeight_ = checkpoint.getBoardHeight();
+    masterRandom_ = checkpoint.getMasterRandom();
+    numResets_ = checkpoint.getNumResets();
+    random_ = checkpoint.getWorldRandom();
+    bugRandoms_ = checkpoint.getBugRandoms();
+    numBirths_ = checkpoint.getNumBirths();
+    round_ = checkpoint.getRound();
+    birthJournal_ = openBirthJournal(EngineOptions.getBirthJournalDirectory());
+    checkpointFile_ = EngineOptions.getCheckpointFile();
+
+    checkpoint.restoreGameStates();
+    population_ = checkpoint.restorePopulation();
+    bugIndex_ = buildBugIndex();
+    Arrays.fill(firstExtinctionTicks_, -1);
+    bugsWhichReproducedThisRound_ = new ArrayList<>();
+    currMillis_ = System.currentTimeMillis();
+
+    tickCompletedPublisher_ = new SubmissionPublisher<>();
+  }
+
+  private static BirthJournal openBirthJournal(Path directory) {
+    if (directory == null) {
+      return null;
+    }
+    try {
+      return new BirthJournal(directory, EngineOptions.getBirthJournalSegmentBytes());
+    } catch (IOException e) {
+      System.err.println("Not logging births, could not open " + directory + ": " + e);
+      return null;
+    }
+  }
 
+  // Resumes from EngineOptions.getResumeFile() if one is set, or else starts a new world of the
+  // given size
+  public static BugController create(int boardWidth, int boardHeight) throws IOException {
+    Path resumeFile = EngineOptions.getResumeFile();
+    if (resumeFile == null) {
+      return new BugController(boardWidth, boardHeight);
+    }
+    Checkpoint checkpoint = Checkpoint.readFrom(resumeFile);
+    System.out.println("Resuming " + checkpoint.size() + " bugs from " + resumeFile);
+    return new BugController(checkpoint);
+  }
+
+  // Ticks 60 times a second on a background thread, advancing the simulation by the wall clock time
+  // between ticks
+  public void start() {
+    if (timer_ != null) {
+      return;
+    }
+    currMillis_ = System.currentTimeMillis();
     timer_ = new Timer();
     timer_.schedule(
         new TimerTask() {
           @Override
           public void run() {
             tick();
-            round_++;
           }
         },
         0, 1000 / 60
@@ -60,107 +221,239 @@ public class BugController {
   private void reset() {
     round_ = 0;
 
-    bugTree_ = new KDTree2d<>();
+    random_ = masterRandom_.derive(numResets_++);
+    bugRandoms_ = random_.derive(BUG_STREAMS);
+    numBirths_ = 0;
+    Arrays.fill(ticksBelowMinimum_, 0);
+    Arrays.fill(firstExtinctionTicks_, -1);
+
+    bugIndex_ = KDTree2d.empty();
+    incrementalIndex_ = null;
 
-    // Bug lists will populate themselves on first tick
-    traditionalBugList_ = new ArrayList<>();
-    killerBugList_ = new ArrayList<>();
+    // Population will populate itself on first tick
+    population_ = new BugPopulation(boardWidth_, boardHeight_);
 
     bugsWhichReproducedThisRound_ = new ArrayList<>();
 
     currMillis_ = System.currentTimeMillis();
   }
 
+  // Advances the simulation by the wall clock time since the last tick
   public void tick() {
-    updateBugs();
-    publishCopiedBugs();
-  }
-
-  private void updateBugs() {
-    // Make any necessary changes at the top of the round
-    GameStates.runScheduledChanges();
-    if (GameStates.checkResetScheduled()) {
-      reset();
-    }
-
-    // Execute the round
-    ConcurrentTimers.Checkpoint checkpoint = new ConcurrentTimers.Checkpoint();
     long millis = System.currentTimeMillis();
     long elapsed = millis - currMillis_;
     currMillis_ = millis;
+    tick(elapsed);
+  }
 
-    List<Future<?>> bugFutures = new LinkedList<>();
-    for (TraditionalBug bug : traditionalBugList_) {
-      bugFutures.add(bug.tickBug(bugTree_, elapsed));
+  // Advances the simulation by exactly millisElapsed, regardless of how long the tick takes to run.
+  // Ticking with a fixed step runs the simulation as fast as the hardware allows.
+  public void tick(long millisElapsed) {
+    TickEvent event = new TickEvent();
+    event.begin();
+    updateBugs(millisElapsed, event);
+    // Frames are only worth filling if someone is listening for them
+    if (tickCompletedPublisher_.hasSubscribers()) {
+      long start = System.nanoTime();
+      publishFrame();
+      event.publishTime = System.nanoTime() - start;
+      PUBLISH_TIMES.record(event.publishTime);
     }
-    for (KillerBug bug : killerBugList_) {
-      bugFutures.add(bug.tickBug(bugTree_, elapsed));
+    event.end();
+    if (event.shouldCommit()) {
+      event.round = round_;
+      event.bugs = population_.size();
+      event.traditionalBugs = population_.countOfType(BugType.TRADITIONAL);
+      event.killerBugs = population_.countOfType(BugType.KILLER);
+      event.commit();
     }
-    for (Future<?> f : bugFutures) {
-      try {
-        f.get();
-      } catch (Exception e) {
-        e.printStackTrace();
+    round_++;
+    TICKS.increment();
+
+    if (checkpointFile_ != null
+        && ++ticksSinceCheckpoint_ >= EngineOptions.getCheckpointInterval()) {
+      ticksSinceCheckpoint_ = 0;
+      saveCheckpoint(checkpointFile_);
+    }
+  }
+
+  // Copies the state of the world. Must be called between ticks, on the thread that ticks, e.g.
+  // before start() or from a tick.
+  public Checkpoint checkpoint() {
+    long start = CHECKPOINT_CAPTURE_TIMES.start();
+    Checkpoint checkpoint =
+        new Checkpoint(
+            population_, masterRandom_, numResets_, random_, bugRandoms_, numBirths_, round_);
+    CHECKPOINT_CAPTURE_TIMES.stop(start);
+    return checkpoint;
+  }
+
+  // Takes a checkpoint now and writes it to path in the background. The same rules as for
+  // checkpoint() apply. The returned future completes once the file is written.
+  public CompletableFuture<Void> saveCheckpoint(Path path) {
+    Checkpoint checkpoint = checkpoint();
+    return CompletableFuture.runAsync(
+            () -> {
+              long start = CHECKPOINT_WRITE_TIMES.start();
+              try {
+                checkpoint.writeTo(path);
+              } catch (IOException e) {
+                throw new RuntimeException("Could not save checkpoint to " + path, e);
+              }
+              CHECKPOINT_WRITE_TIMES.stop(start);
+            },
+            CHECKPOINT_WRITER)
+        .whenComplete(
+            (result, error) -> {
+              if (error != null) {
+                System.err.println(error.getMessage());
+              }
+            });
+  }
+
+  // Number of ticks since the last reset
+  public int getRound() {
+    return round_;
+  }
+
+  public int getBugCount(BugType type) {
+    return population_.countOfType(type);
+  }
+
+  // Number of ticks since the world started in which this type fell below its minimum, by not
+  // having enough children to replace its dead, and was topped up with random bugs
+  public int getTicksBelowMinimum(BugType type) {
+    return ticksBelowMinimum_[type.ordinal()];
+  }
+
+  // Tick since the world started, counting from 1, in which the last living bug of this type died,
+  // before any random bugs were added to replace it, or -1 if that has not happened
+  public long getFirstExtinctionTick(BugType type) {
+    return firstExtinctionTicks_[type.ordinal()];
+  }
+
+  // Mean number of hidden nodes in the nets of the living bugs of this type, or NaN if there are
+  // none. Must not be called while the controller is ticking.
+  public double getMeanHiddenNodes(BugType type) {
+    long total = 0;
+    int count = 0;
+    for (int row = 0; row < population_.size(); row++) {
+      if (population_.getType(row) == type) {
+        total += population_.getGenome(row).getNumHiddenNodes();
+        count++;
       }
     }
+    return count == 0 ? Double.NaN : (double) total / count;
+  }
 
-    checkpoint = ConcurrentTimers.addToTimer("bug solves", checkpoint);
+  private void updateBugs(long elapsed, TickEvent event) {
+    // Make any necessary changes at the top of the round
+    GameStates.runScheduledChanges();
+    if (GameStates.checkResetScheduled()) {
+      reset();
+    }
 
-    // The bug tree must first be populated with the new locations of all surviving
-    // bugs before creating any new bugs, or the new bugs may overlap when they try
-    // to use getRandomAvailableLocation
-    bugTree_.clear();
-    rebuildStateAfterTick(traditionalBugList_);
-    rebuildStateAfterTick(killerBugList_);
+    // Execute the round. Each phase is timed for the metrics and the flight recorder.
+    long senseStart = System.nanoTime();
+    long inferenceStart = senseStart;
+    long moveStart = senseStart;
+
+    // Each phase runs as one task per grain-sized range of rows, with a single join for the whole
+    // population
+    try {
+      TICK_EXECUTOR.forRange(
+          "sense",
+          population_.size(),
+          (start, end) -> Bug.senseBugs(population_, start, end, bugIndex_, elapsed));
+      inferenceStart = System.nanoTime();
+      inference_.evaluate(population_, TICK_EXECUTOR);
+      moveStart = System.nanoTime();
+      TICK_EXECUTOR.forRange(
+          "move",
+          population_.size(),
+          (start, end) ->
+              Bug.moveBugs(population_, start, end, inference_.getOutputs(), elapsed));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+
+    long removeDeadStart = System.nanoTime();
+    event.deaths = rebuildStateAfterTick();
 
     bugsWhichReproducedThisRound_.clear();
 
-    makeNewBugs(traditionalBugList_,
-        (parent1, parent2) -> new TraditionalBug(parent1, parent2, getRandomAvailableLocation()),
-        TRADITIONAL_BUG_COUNTS,
-        (isInitialBatch) -> new TraditionalBug(getRandomAvailableLocation(), isInitialBatch));
+    // Births happen in three passes: decide who is born to which parents, build all of the
+    // newborns' genomes in parallel, then place them on the board one at a time
+    long birthsStart = System.nanoTime();
+    requestNewBugs(BugType.TRADITIONAL, TRADITIONAL_BUG_COUNTS);
     if (GameStates.getKillersExist()) {
-      makeNewBugs(killerBugList_,
-          (parent1, parent2) -> new KillerBug(parent1, parent2, getRandomAvailableLocation()),
-          KILLER_BUG_COUNTS, (isInitialBatch) -> new KillerBug(getRandomAvailableLocation()));
+      requestNewBugs(BugType.KILLER, KILLER_BUG_COUNTS);
     }
+    birthRequests_.build(population_, BIRTH_EXECUTOR);
+    event.births = placeNewBugs();
 
-    for (Bug bug : bugsWhichReproducedThisRound_) {
-      bug.updateStateAfterReproduction();
+    for (int row : bugsWhichReproducedThisRound_) {
+      Bug.onReproduced(population_, row);
     }
 
-    checkpoint = ConcurrentTimers.addToTimer("update lists", checkpoint);
+    // See documentation on initial declaration of bugIndex_ for why this is a copy
+    long indexStart = System.nanoTime();
+    bugIndex_ = buildBugIndex();
+    long end = System.nanoTime();
+
+    event.senseTime = inferenceStart - senseStart;
+    event.inferenceTime = moveStart - inferenceStart;
+    event.moveTime = removeDeadStart - moveStart;
+    event.removeDeadTime = birthsStart - removeDeadStart;
+    event.birthsTime = indexStart - birthsStart;
+    event.indexTime = end - indexStart;
+    BUG_SOLVE_TIMES.record(removeDeadStart - senseStart);
+    INFERENCE_TIMES.record(event.inferenceTime);
+    UPDATE_LISTS_TIMES.record(end - removeDeadStart);
+  }
 
-    printTimers();
+  private SpatialIndex buildBugIndex() {
+    double[] xs = population_.getXs();
+    double[] ys = population_.getYs();
+    int[] types = population_.getTypeOrdinals();
+    int size = population_.size();
+    switch (EngineOptions.getSpatialIndexType()) {
+      case GRID:
+        // Bugs are all the same size, so one bug diameter per cell keeps a bug's closest
+        // neighbors within a ring or two of cells
+        return UniformGrid2d.build(xs, ys, types, size, GameStates.getBugRadius() * 2.0);
+      case INCREMENTAL_GRID:
+        return updateIncrementalIndex();
+      case KD_TREE:
+      default:
+        return KDTree2d.build(xs, ys, types, size);
+    }
   }
 
-  @SuppressWarnings("unused")
-  private void printTimers() {
-    if (ConcurrentTimers.USE_TIMERS && round_ % 250 == 0) {
-      System.out.println("==========");
-      System.out.println("Bug solves   " + ConcurrentTimers.getTimer("bug solves"));
-      System.out.println("Update lists " + ConcurrentTimers.getTimer("update lists"));
-      System.out.println();
-      System.out.println("BugSolve1    " + ConcurrentTimers.getTimer("BugSolve1"));
-      System.out.println("BugSolve2    " + ConcurrentTimers.getTimer("BugSolve2"));
-      System.out.println("BugSolve3    " + ConcurrentTimers.getTimer("BugSolve3"));
-      System.out.println("BugSolve4    " + ConcurrentTimers.getTimer("BugSolve4"));
+  // Dead bugs have already been taken out in rebuildStateAfterTick(), so this only has to move the
+  // survivors and add the newborns. A bug that stays in its cell costs a few stores.
+  private SpatialIndex updateIncrementalIndex() {
+    double cellSize = GameStates.getBugRadius() * 2.0;
+    if (incrementalIndex_ == null || incrementalIndex_.getMinCellSize() != cellSize) {
+      incrementalIndex_ = new IncrementalGrid2d(boardWidth_, boardHeight_, cellSize);
+    }
+    double[] xs = population_.getXs();
+    double[] ys = population_.getYs();
+    int[] types = population_.getTypeOrdinals();
+    for (int row = 0; row < population_.size(); row++) {
+      incrementalIndex_.put(population_.getGenomeSlot(row), row, xs[row], ys[row], types[row]);
     }
+    incrementalIndex_.rebalance();
+    return incrementalIndex_;
   }
 
-  private <SpecificBug extends Bug> void addBugToEcosystem(
-      SpecificBug newBug, List<SpecificBug> relevantBugList) {
-    relevantBugList.add(newBug);
-    // See documentation on initial declaration of bugTree_ for why we have to clone
-    bugTree_.addLocation(newBug.getPosition(), newBug.getBugType());
+  // Bugs are numbered in the order they are born into their world. The number is the bug's id,
+  // and its random stream is derived from it.
+  private long nextBugId() {
+    return numBirths_++;
   }
 
-  private <SpecificBug extends Bug> void addBugToEcosystem(
-      SpecificBug newBug,
-      SpecificBug parent1,
-      SpecificBug parent2,
-      List<SpecificBug> relevantBugList) {
-    addBugToEcosystem(newBug, relevantBugList);
+  private void recordReproduction(int parent1, int parent2) {
     bugsWhichReproducedThisRound_.add(parent1);
     bugsWhichReproducedThisRound_.add(parent2);
   }
@@ -168,46 +461,184 @@ public class BugController {
   // Does a few important things:
   // 1. Removes dead bugs
   // 2. Recalculates reproduction scores
-  // 3. Re-sorts bug list based on reproduction score
-  // 4. Rebuilds KD tree with new locations
-  private <SpecificBug extends Bug> void rebuildStateAfterTick(List<SpecificBug> relevantBugList) {
-    // Copy to temporary list and clear master list
-    List<SpecificBug> tempList = new LinkedList<>(relevantBugList);
-    relevantBugList.clear();
-    
-    // Prune dead bugs
-    tempList.removeIf((bug) -> !bug.isAlive());
+  // Returns the number of bugs that died.
+  private int rebuildStateAfterTick() {
+    // Mark bugs which died between ticks, then prune all dead bugs
+    int sizeBefore = population_.size();
+    for (int row = 0; row < population_.size(); row++) {
+      if (!Bug.of(population_.getType(row)).isAlive(population_, row)) {
+        population_.kill(row);
+      }
+      // Genome slots are freed by removeDead(), so this is the last chance to find them
+      if (incrementalIndex_ != null && !population_.isAlive(row)) {
+        incrementalIndex_.remove(population_.getGenomeSlot(row));
+      }
+    }
+    int[] countsBefore = new int[BugType.values().length];
+    for (BugType type : BugType.values()) {
+      countsBefore[type.ordinal()] = population_.countOfType(type);
+    }
+    population_.removeDead();
+    int deaths = sizeBefore - population_.size();
+    // Types which had bugs at the start of this tick and have none now died out
+    for (BugType type : BugType.values()) {
+      int t = type.ordinal();
+      if (firstExtinctionTicks_[t] < 0
+          && countsBefore[t] > 0
+          && population_.countOfType(type) == 0) {
+        firstExtinctionTicks_[t] = round_ + 1;
+      }
+    }
+    DEATHS.add(deaths);
 
-    // Re-insert into bugTree_ and relevantBugList
-    for (SpecificBug bug : tempList) {
-      addBugToEcosystem(bug, relevantBugList);
+    // Calculate new reproduction scores
+    for (int row = 0; row < population_.size(); row++) {
+      Bug.updateReproductionScore(population_, row);
     }
+    return deaths;
+  }
 
-    // Calculate new reproduction scores (must be done after adding all bugs to bugTree_)
-    for (SpecificBug bug : relevantBugList) {
-      bug.updateReproductionScore();
+  // Adds count bugs with random genomes at random locations, e.g. to start a world at a given size.
+  // Must not be called while the controller is ticking.
+  public void addRandomBugs(BugType type, int count, boolean isInitialBatch) {
+    for (int i = 0; i < count; i++) {
+      long id = nextBugId();
+      birthRequests_.addRandom(type, isInitialBatch, id, bugRandoms_.derive(id));
     }
+    birthRequests_.build(population_, BIRTH_EXECUTOR);
+    placeNewBugs();
+    bugIndex_ = buildBugIndex();
+  }
 
-    // Re-sort relevantBugList by reproduction score
-    //    Collections.sort(relevantBugList, Comparator.comparingDouble(Bug::getReproductionScore));
+  // The count best bugs of each type by reproduction score, best first, to send to another world.
+  // The bugs themselves stay here. Ties go to the older bug, so the choice is deterministic. Must
+  // not be called while the controller is ticking.
+  public List<Migrant> selectEmigrants(int count) {
+    List<Migrant> emigrants = new ArrayList<>();
+    for (BugType type : BugType.values()) {
+      List<Integer> rows = new ArrayList<>();
+      for (int row = 0; row < population_.size(); row++) {
+        if (isReproducer(row, type)) {
+          rows.add(row);
+        }
+      }
+      rows.sort(
+          (a, b) -> {
+            int byScore =
+                Double.compare(
+                    population_.getReproductionScore(b), population_.getReproductionScore(a));
+            return byScore != 0
+                ? byScore
+                : Long.compare(population_.getId(a), population_.getId(b));
+          });
+      for (int row : rows.subList(0, Math.min(count, rows.size()))) {
+        emigrants.add(
+            new Migrant(type, population_.getGenome(row), population_.getColor(row)));
+      }
+    }
+    return emigrants;
+  }
+
+  // Adds bugs from another world at random locations, as newborns with no parents here. Migrants
+  // whose type is already at its maximum are turned away. Must not be called while the controller
+  // is ticking.
+  public void addImmigrants(List<Migrant> immigrants) {
+    int[] counts = new int[BugType.values().length];
+    for (BugType type : BugType.values()) {
+      counts[type.ordinal()] = population_.countOfType(type);
+    }
+    for (Migrant immigrant : immigrants) {
+      BugType type = immigrant.getType();
+      if (counts[type.ordinal()] >= countConfigOf(type).maxBugs_) {
+        continue;
+      }
+      counts[type.ordinal()]++;
+      birthRequests_.addMigrant(immigrant, nextBugId());
+    }
+    birthRequests_.build(population_, BIRTH_EXECUTOR);
+    placeNewBugs();
+    bugIndex_ = buildBugIndex();
   }
 
-  private <SpecificBug extends Bug> void makeRandomBugsUpToMinimum(
-      List<SpecificBug> relevantBugList,
-      int startMinBugs,
-      int inPlayMinBugs,
-      // newRandomBug takes isInitialBatch and returns a bug
-      Function<Boolean, SpecificBug> newRandomBug) {
+  private static BugCountConfig countConfigOf(BugType type) {
+    return type == BugType.KILLER ? KILLER_BUG_COUNTS : TRADITIONAL_BUG_COUNTS;
+  }
+
+  private void requestRandomBugsUpToMinimum(
+      BugType type, int numRequested, int startMinBugs, int inPlayMinBugs) {
     // We can have no bugs for a few reasons.
     // 1) The beginning of the game
     // 2) They all managed to coincidentally die in the same round
     // 3) The user deactivated and reactivated a specific kind of bug
-    boolean isInitialBatch = (relevantBugList.size() == 0);
+    boolean isInitialBatch = (population_.countOfType(type) == 0);
     int minBugs = isInitialBatch ? startMinBugs : inPlayMinBugs;
-    while (relevantBugList.size() < minBugs) {
-      SpecificBug newBug = newRandomBug.apply(isInitialBatch);
-      addBugToEcosystem(newBug, relevantBugList);
+    if (round_ > 0 && population_.countOfType(type) + numRequested < minBugs) {
+      ticksBelowMinimum_[type.ordinal()]++;
+    }
+    for (int count = population_.countOfType(type) + numRequested; count < minBugs; count++) {
+      long id = nextBugId();
+      birthRequests_.addRandom(type, isInitialBatch, id, bugRandoms_.derive(id));
+    }
+  }
+
+  // Adds every requested bug to the population, each at a free location. Returns the number added.
+  private int placeNewBugs() {
+    // Most ticks have no births, and then the free space need not be mapped at all
+    if (birthRequests_.size() == 0) {
+      return 0;
     }
+    freeSpace_.build(
+        population_.getXs(),
+        population_.getYs(),
+        population_.size(),
+        boardWidth_,
+        boardHeight_,
+        GameStates.getBugRadius() * 2.0);
+
+    for (int i = 0; i < birthRequests_.size(); i++) {
+      Bug species = Bug.of(birthRequests_.getType(i));
+      int color = birthRequests_.getColor(i);
+      Genome genome = birthRequests_.getGenome(i);
+      int row;
+      if (birthRequests_.hasParents(i)) {
+        // Parents' rows stay valid until the end of the tick, since rows are only appended here
+        int parent = birthRequests_.getParent1(i);
+        Vector2d location =
+            GameStates.getChildrenBornNearParents()
+                ? getAvailableLocationNear(population_.getX(parent), population_.getY(parent))
+                : getRandomAvailableLocation();
+        row = species.addChild(population_, location, color, genome);
+      } else {
+        row =
+            species.addRandomBug(
+                population_,
+                getRandomAvailableLocation(),
+                color,
+                genome,
+                birthRequests_.isInitialBatch(i));
+      }
+      population_.setId(row, birthRequests_.getId(i));
+      if (birthJournal_ != null) {
+        journalBirth(i, row);
+      }
+      freeSpace_.add(population_.getX(row), population_.getY(row));
+    }
+    int births = birthRequests_.size();
+    BIRTHS.add(births);
+    birthRequests_.clear();
+    return births;
+  }
+
+  private void journalBirth(int request, int row) {
+    boolean hasParents = birthRequests_.hasParents(request);
+    birthJournal_.record(
+        numResets_ - 1,
+        round_,
+        population_.getId(row),
+        hasParents ? population_.getId(birthRequests_.getParent1(request)) : -1,
+        hasParents ? population_.getId(birthRequests_.getParent2(request)) : -1,
+        population_.getType(row),
+        population_.getGenome(row));
   }
 
   private static class BugCountConfig {
@@ -222,116 +653,91 @@ public class BugController {
     }
   }
 
-  private <SpecificBug extends Bug> void makeNewBugs(
-      List<SpecificBug> relevantBugList,
-      BiFunction<SpecificBug, SpecificBug, SpecificBug> newBugByReproduction,
-      BugCountConfig bugCountConfig,
-      // Function(isInitialBatch) => Bug
-      Function<Boolean, SpecificBug> newRandomBug) {
-    if (relevantBugList.size() >= bugCountConfig.maxBugs_) {
+  private void requestNewBugs(BugType type, BugCountConfig bugCountConfig) {
+    if (population_.countOfType(type) >= bugCountConfig.maxBugs_) {
       return;
     }
 
-    double totalReproductionScore = 0;
-    ArrayList<SpecificBug> reproducers = new ArrayList<>();
-    for (SpecificBug bug : relevantBugList) {
-      double bugReproductionScore = bug.getReproductionScore();
-      if (bugReproductionScore > 0.) {
-        totalReproductionScore += bug.getReproductionScore();
-        reproducers.add(bug);
-      }
+    // Any bug of this type with a positive reproduction score can be a parent, with odds weighted
+    // by that score. Newborns are only added to the population after every request is made, so they
+    // never become parents in the same tick.
+    int size = population_.size();
+    if (parentWeights_.length < size) {
+      parentWeights_ = new double[Math.max(size, parentWeights_.length * 2)];
     }
-    
-    // TODO: Generic "pick by weight" util
-    if (reproducers.size() >= 2) {
-      // -- Make one new bug from reproduction per round
-
-      // Find the first parent by picking a random bug, with odds of being chosen weighted by
-      // reproduction score
-      SpecificBug parent1 = null;
-      double parentOnePicker = SHARED_RANDOM.nextDouble() * totalReproductionScore;
-      for (SpecificBug bug : reproducers) {
-        parentOnePicker -= bug.getReproductionScore();
-        if (parentOnePicker <= 0) {
-          parent1 = bug;
-          break;
-        }
-      }
-
-      // Find the second parent in the same way, but eliminate the first parent from participation
-      // so
-      // that there is no asexual reproduction
-      SpecificBug parent2 = null;
-      double remainingReproductionScore = totalReproductionScore - parent1.getReproductionScore();
-      double parentTwoPicker = SHARED_RANDOM.nextDouble() * remainingReproductionScore;
-      for (SpecificBug bug : reproducers) {
-        if (bug == parent1) {
-          continue;
-        }
-        parentTwoPicker -= bug.getReproductionScore();
-        if (parentTwoPicker <= 0) {
-          parent2 = bug;
-          break;
-        }
-      }
-
-      SpecificBug newBug = newBugByReproduction.apply(parent1, parent2);
-      addBugToEcosystem(newBug, parent1, parent2, relevantBugList);
+    for (int row = 0; row < size; row++) {
+      parentWeights_[row] = isReproducer(row, type) ? population_.getReproductionScore(row) : 0.0;
+    }
+    parentSampler_.build(parentWeights_, size);
+
+    // -- Make up to GameStates.getBirthsPerTick() new bugs from reproduction per round
+    // Each pair of parents is two different bugs, so that there is no asexual reproduction
+    int births = 0;
+    while (births < GameStates.getBirthsPerTick()
+        && population_.countOfType(type) + births < bugCountConfig.maxBugs_
+        && parentSampler_.samplePair(random_, parents_)) {
+      long id = nextBugId();
+      birthRequests_.addChild(type, parents_[0], parents_[1], id, bugRandoms_.derive(id));
+      recordReproduction(parents_[0], parents_[1]);
+      births++;
     }
 
     // Refill with random bugs as necessary
-    makeRandomBugsUpToMinimum(relevantBugList, bugCountConfig.initialBugs_, bugCountConfig.minBugs_,
-        newRandomBug);
+    requestRandomBugsUpToMinimum(
+        type, births, bugCountConfig.initialBugs_, bugCountConfig.minBugs_);
+  }
+
+  private boolean isReproducer(int row, BugType type) {
+    return population_.getType(row) == type && population_.getReproductionScore(row) > 0.;
   }
 
   public class TickCompletedMessage {
-    public final List<Bug> bugList;
-    public final List<Pair<Bug, Bug>> matings;
+    // Must be released by each subscriber once it is done with it
+    public final BugFrame frame;
 
-    public TickCompletedMessage(List<Bug> bugList, List<Pair<Bug, Bug>> matings) {
-      this.bugList = bugList;
-      this.matings = matings;
+    public TickCompletedMessage(BugFrame frame) {
+      this.frame = frame;
     }
   }
 
-  private void publishCopiedBugs() {
-    List<Bug> copy = new ArrayList<>();
-    for (TraditionalBug bug : traditionalBugList_) {
-      // deep copy
-      copy.add(new TraditionalBug(bug));
-    }
-    for (KillerBug bug : killerBugList_) {
-      // deep copy
-      copy.add(new KillerBug(bug));
-    }
-    List<Pair<Bug, Bug>> matings = new ArrayList<>();
-    for (int i = 0; i < bugsWhichReproducedThisRound_.size(); i += 2) {
-      // TODO: Introduce "bug id" and publish this as bug id rather than direct reference to bug
-      Bug parent1 = bugsWhichReproducedThisRound_.get(i);
-      Bug parent2 = bugsWhichReproducedThisRound_.get(i + 1);
-      matings.add(new Pair<>(parent1, parent2));
+  private void publishFrame() {
+    BugFrame frame = framePool_.poll();
+    if (frame == null) {
+      frame = new BugFrame(framePool_);
     }
-
-    tickCompletedPublisher_.submit(new TickCompletedMessage(copy, matings));
+    frame.fill(
+        population_,
+        bugsWhichReproducedThisRound_,
+        tickCompletedPublisher_.getNumberOfSubscribers());
+    tickCompletedPublisher_.submit(new TickCompletedMessage(frame));
   }
 
   public Publisher<TickCompletedMessage> getTickCompletedPublisher() {
     return tickCompletedPublisher_;
   }
 
-  // TODO: getRandomAvailableLocationNearExistingLocation() for reproductions
   private Vector2d getRandomAvailableLocation() {
-    Vector2d boardSize = Sizes.getBoardSize();
+    Vector2d location = freeSpace_.findFreeLocation(random_);
+    return location != null ? location : guessAvailableLocation();
+  }
+
+  private Vector2d getAvailableLocationNear(double x, double y) {
+    Vector2d location = freeSpace_.findFreeLocationNear(x, y, random_);
+    return location != null ? location : guessAvailableLocation();
+  }
+
+  // Only needed when the board is so crowded that freeSpace_ has no free cells left, though there
+  // may still be gaps between bugs
+  private Vector2d guessAvailableLocation() {
+    Vector2d boardSize = new Vector2d(boardWidth_, boardHeight_);
 
     int steps = 0;
     while (steps < 100) {
       Vector2d loc =
           new Vector2d(
-              SHARED_RANDOM.nextDouble() * boardSize.getX(),
-              SHARED_RANDOM.nextDouble() * boardSize.getY());
-      Vector2d nearest = bugTree_.findNearestLocation(loc);
-      if (nearest == null
-          || (loc.subtract(nearest).normSquared() > (GameStates.getBugRadiusSquared() * 4.0))) {
+              random_.nextDouble() * boardSize.getX(),
+              random_.nextDouble() * boardSize.getY());
+      if (isLocationAvailable(loc)) {
         return loc;
       }
       steps++;
@@ -339,4 +745,19 @@ public class BugController {
     System.err.println("Could not find a valid location");
     return new Vector2d(boardSize.getX() / 2.0, boardSize.getY() / 2.0);
   }
+
+  // bugIndex_ is only rebuilt once all births are done, so check new locations directly against the
+  // population. This is only a last resort, so a scan is cheaper than building the index a second
+  // time.
+  private boolean isLocationAvailable(Vector2d loc) {
+    double minDistanceSquared = GameStates.getBugRadiusSquared() * 4.0;
+    for (int row = 0; row < population_.size(); row++) {
+      double dx = population_.getX(row) - loc.getX();
+      double dy = population_.getY(row) - loc.getY();
+      if ((dx * dx) + (dy * dy) <= minDistanceSquared) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,174 @@
+package bugs;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import utils.Vector2d;
+
+// The state of every bug at the end of one tick, for consumers outside of the simulation (e.g. the
+// display). Bugs are numbered 0 to size() - 1, and are stored column by column like the population
+// they were copied from. A bug's number changes from frame to frame, but its handle does not (see
+// BugPopulation), so consumers follow a bug across frames with getHandle() and indexOf().
+//
+// Frames are pooled: a frame must not be modified once it is published, and each consumer that
+// receives one must call release() exactly once when it is done reading it, after which the frame
+// may be refilled for a later tick. A frame that is never released is simply garbage collected.
+public class BugFrame {
+  private final Queue<BugFrame> pool_;
+  private final AtomicInteger references_ = new AtomicInteger();
+
+  private int size_;
+  private long[] ids_ = new long[0];
+  private long[] handles_ = new long[0];
+  // Index of the bug in each slot of the population, or -1, for indexOf()
+  private int[] slotIndices_ = new int[0];
+  private double[] xs_ = new double[0];
+  private double[] ys_ = new double[0];
+  // BugType ordinals
+  private int[] types_ = new int[0];
+  // Packed 0xRRGGBB
+  private int[] colors_ = new int[0];
+  private double[] reproductionScores_ = new double[0];
+  // NeuralNet.NUM_INPUTS values per bug. Along with the genome, this is enough to rebuild the bug's
+  // net as it was solved this tick.
+  private double[] inputs_ = new double[0];
+  // Genomes are immutable, so these are shared with the population rather than copied
+  private Genome[] genomes_ = new Genome[0];
+  // Pairs of parents, as indices into this frame
+  private int numMatings_;
+  private int[] matings_ = new int[0];
+
+  BugFrame(Queue<BugFrame> pool) {
+    pool_ = pool;
+  }
+
+  // Copies the population into this frame, which will be handed to `references` consumers.
+  // `parentRows` holds the rows which reproduced this tick, in pairs.
+  void fill(BugPopulation population, List<Integer> parentRows, int references) {
+    int size = population.size();
+    if (xs_.length < size) {
+      int capacity = Math.max(size, xs_.length * 2);
+      ids_ = new long[capacity];
+      handles_ = new long[capacity];
+      xs_ = new double[capacity];
+      ys_ = new double[capacity];
+      types_ = new int[capacity];
+      colors_ = new int[capacity];
+      reproductionScores_ = new double[capacity];
+      inputs_ = new double[capacity * NeuralNet.NUM_INPUTS];
+      genomes_ = new Genome[capacity];
+    }
+
+    System.arraycopy(population.getXs(), 0, xs_, 0, size);
+    System.arraycopy(population.getYs(), 0, ys_, 0, size);
+    System.arraycopy(population.getTypeOrdinals(), 0, types_, 0, size);
+    System.arraycopy(population.getInputs(), 0, inputs_, 0, size * NeuralNet.NUM_INPUTS);
+    int numSlots = population.getNumSlots();
+    if (slotIndices_.length < numSlots) {
+      slotIndices_ = new int[Math.max(numSlots, slotIndices_.length * 2)];
+    }
+    Arrays.fill(slotIndices_, 0, numSlots, -1);
+    for (int row = 0; row < size; row++) {
+      ids_[row] = population.getId(row);
+      handles_[row] = population.getHandle(row);
+      slotIndices_[BugPopulation.slotOfHandle(handles_[row])] = row;
+      colors_[row] = population.getColor(row);
+      reproductionScores_[row] = population.getReproductionScore(row);
+      genomes_[row] = population.getGenome(row);
+    }
+    // Do not keep the genomes of bugs from older ticks alive
+    Arrays.fill(genomes_, size, Math.max(size, size_), null);
+    size_ = size;
+
+    if (matings_.length < parentRows.size()) {
+      matings_ = new int[parentRows.size()];
+    }
+    // Frames are filled in row order, so a parent's row is also its index in the frame
+    for (int i = 0; i < parentRows.size(); i++) {
+      matings_[i] = parentRows.get(i);
+    }
+    numMatings_ = parentRows.size() / 2;
+
+    references_.set(references);
+  }
+
+  // Returns the frame to its pool once every consumer has released it
+  public void release() {
+    if (references_.decrementAndGet() == 0) {
+      pool_.offer(this);
+    }
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  // Birth number of the bug within its world, as in the birth journal
+  public long getId(int bug) {
+    return ids_[bug];
+  }
+
+  public long getHandle(int bug) {
+    return handles_[bug];
+  }
+
+  // The number of the bug with this handle in this frame, or -1 if it is not in it
+  public int indexOf(long handle) {
+    int slot = BugPopulation.slotOfHandle(handle);
+    if (slot < 0 || slot >= slotIndices_.length) {
+      return -1;
+    }
+    int bug = slotIndices_[slot];
+    return bug >= 0 && bug < size_ && handles_[bug] == handle ? bug : -1;
+  }
+
+  public BugType getBugType(int bug) {
+    return BugType.fromOrdinal(types_[bug]);
+  }
+
+  public double getX(int bug) {
+    return xs_[bug];
+  }
+
+  public double getY(int bug) {
+    return ys_[bug];
+  }
+
+  public Vector2d getPosition(int bug) {
+    return new Vector2d(xs_[bug], ys_[bug]);
+  }
+
+  // Packed 0xRRGGBB
+  public int getColor(int bug) {
+    return colors_[bug];
+  }
+
+  public double getReproductionScore(int bug) {
+    return reproductionScores_[bug];
+  }
+
+  // Builds and solves the bug's net. Nets are only built on request, since most consumers never
+  // look at them.
+  public NeuralNet getNeuralNet(int bug) {
+    NeuralNet net = new NeuralNet(genomes_[bug]);
+    net.setLayerValues(
+        0,
+        Arrays.copyOfRange(
+            inputs_, bug * NeuralNet.NUM_INPUTS, (bug + 1) * NeuralNet.NUM_INPUTS));
+    net.solveNet();
+    return net;
+  }
+
+  public int getNumMatings() {
+    return numMatings_;
+  }
+
+  public int getMatingParent1(int mating) {
+    return matings_[2 * mating];
+  }
+
+  public int getMatingParent2(int mating) {
+    return matings_[(2 * mating) + 1];
+  }
+}
@@ -0,0 +1,391 @@
+package bugs;
+
+import java.util.Arrays;
+
+// Column-oriented store for every live bug. Row i of each column describes the same bug, and rows
+// are kept dense so that a tick can walk them without gaps. The order of the rows means nothing:
+// dead bugs are removed by moving the last row into their place.
+//
+// Rows change as bugs die, so every bug also owns a slot for its whole life, which holds its genome
+// and its current row. Slots of dead bugs are reused, and each reuse bumps the slot's generation.
+// A handle, the slot and its generation together, names one bug for as long as it lives and never
+// another, so consumers can follow a bug from tick to tick and find its row in constant time.
+public class BugPopulation {
+  private static final int INITIAL_CAPACITY = 256;
+
+  // Size of the board the bugs live on
+  private final int width_;
+  private final int height_;
+  private int size_;
+  private final int[] countOfType_ = new int[BugType.values().length];
+
+  // Birth number of each bug within its world, or -1 if it has none (see BugController)
+  private long[] id_;
+  private double[] x_;
+  private double[] y_;
+  // BugType ordinals
+  private int[] type_;
+  private boolean[] alive_;
+  private boolean[] fromInitialBatch_;
+  private int[] millisAlive_;
+  private int[] millisSlow_;
+  private int[] millisSinceLastKill_;
+  private int[] numKillsSinceLastReproduction_;
+  private double[] reproductionScore_;
+  // Packed 0xRRGGBB
+  private int[] color_;
+  private int[] genomeSlot_;
+  // What the bug sensed at the start of the current tick: NeuralNet.NUM_INPUTS values per row, plus
+  // the type of its nearest neighbor and whether they are touching
+  private double[] inputs_;
+  private int[] nearestType_;
+  private boolean[] touchingNearest_;
+
+  // Indexed by genome slot, not by row
+  private Genome[] genomes_;
+  private int[] slotRows_;
+  private int[] slotGenerations_;
+  private int numGenomeSlots_;
+  private int[] freeGenomeSlots_;
+  private int numFreeGenomeSlots_;
+
+  public BugPopulation(int width, int height) {
+    width_ = width;
+    height_ = height;
+    allocateRows(INITIAL_CAPACITY);
+    genomes_ = new Genome[INITIAL_CAPACITY];
+    slotRows_ = new int[INITIAL_CAPACITY];
+    slotGenerations_ = new int[INITIAL_CAPACITY];
+    freeGenomeSlots_ = new int[INITIAL_CAPACITY];
+    clear();
+  }
+
+  private void allocateRows(int capacity) {
+    id_ = new long[capacity];
+    x_ = new double[capacity];
+    y_ = new double[capacity];
+    type_ = new int[capacity];
+    alive_ = new boolean[capacity];
+    fromInitialBatch_ = new boolean[capacity];
+    millisAlive_ = new int[capacity];
+    millisSlow_ = new int[capacity];
+    millisSinceLastKill_ = new int[capacity];
+    numKillsSinceLastReproduction_ = new int[capacity];
+    reproductionScore_ = new double[capacity];
+    color_ = new int[capacity];
+    genomeSlot_ = new int[capacity];
+    inputs_ = new double[capacity * NeuralNet.NUM_INPUTS];
+    nearestType_ = new int[capacity];
+    touchingNearest_ = new boolean[capacity];
+  }
+
+  private void growRows() {
+    int capacity = x_.length * 2;
+    id_ = Arrays.copyOf(id_, capacity);
+    x_ = Arrays.copyOf(x_, capacity);
+    y_ = Arrays.copyOf(y_, capacity);
+    type_ = Arrays.copyOf(type_, capacity);
+    alive_ = Arrays.copyOf(alive_, capacity);
+    fromInitialBatch_ = Arrays.copyOf(fromInitialBatch_, capacity);
+    millisAlive_ = Arrays.copyOf(millisAlive_, capacity);
+    millisSlow_ = Arrays.copyOf(millisSlow_, capacity);
+    millisSinceLastKill_ = Arrays.copyOf(millisSinceLastKill_, capacity);
+    numKillsSinceLastReproduction_ = Arrays.copyOf(numKillsSinceLastReproduction_, capacity);
+    reproductionScore_ = Arrays.copyOf(reproductionScore_, capacity);
+    color_ = Arrays.copyOf(color_, capacity);
+    genomeSlot_ = Arrays.copyOf(genomeSlot_, capacity);
+    inputs_ = Arrays.copyOf(inputs_, capacity * NeuralNet.NUM_INPUTS);
+    nearestType_ = Arrays.copyOf(nearestType_, capacity);
+    touchingNearest_ = Arrays.copyOf(touchingNearest_, capacity);
+  }
+
+  public void clear() {
+    size_ = 0;
+    Arrays.fill(countOfType_, 0);
+    Arrays.fill(genomes_, null);
+    // Handles from before the clear must not find the bugs which reuse their slots
+    for (int slot = 0; slot < numGenomeSlots_; slot++) {
+      slotGenerations_[slot]++;
+    }
+    numGenomeSlots_ = 0;
+    numFreeGenomeSlots_ = 0;
+  }
+
+  public int getWidth() {
+    return width_;
+  }
+
+  public int getHeight() {
+    return height_;
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  public int countOfType(BugType type) {
+    return countOfType_[type.ordinal()];
+  }
+
+  private int allocateGenomeSlot(Genome genome, int row) {
+    int slot;
+    if (numFreeGenomeSlots_ > 0) {
+      slot = freeGenomeSlots_[--numFreeGenomeSlots_];
+    } else {
+      if (numGenomeSlots_ == genomes_.length) {
+        genomes_ = Arrays.copyOf(genomes_, numGenomeSlots_ * 2);
+        slotRows_ = Arrays.copyOf(slotRows_, numGenomeSlots_ * 2);
+        slotGenerations_ = Arrays.copyOf(slotGenerations_, numGenomeSlots_ * 2);
+        freeGenomeSlots_ = Arrays.copyOf(freeGenomeSlots_, numGenomeSlots_ * 2);
+      }
+      slot = numGenomeSlots_++;
+    }
+    genomes_[slot] = genome;
+    slotRows_[slot] = row;
+    return slot;
+  }
+
+  private void freeGenomeSlot(int slot) {
+    genomes_[slot] = null;
+    slotGenerations_[slot]++;
+    freeGenomeSlots_[numFreeGenomeSlots_++] = slot;
+  }
+
+  // Appends a new live bug and returns its row
+  public int add(
+      BugType type, double x, double y, int color, Genome genome, boolean fromInitialBatch) {
+    if (size_ == x_.length) {
+      growRows();
+    }
+    int row = size_++;
+    id_[row] = -1;
+    x_[row] = x;
+    y_[row] = y;
+    type_[row] = type.ordinal();
+    alive_[row] = true;
+    fromInitialBatch_[row] = fromInitialBatch;
+    millisAlive_[row] = 0;
+    millisSlow_[row] = 0;
+    millisSinceLastKill_[row] = 0;
+    numKillsSinceLastReproduction_[row] = 0;
+    reproductionScore_[row] = 0;
+    color_[row] = color;
+    genomeSlot_[row] = allocateGenomeSlot(genome, row);
+    Arrays.fill(
+        inputs_, row * NeuralNet.NUM_INPUTS, (row + 1) * NeuralNet.NUM_INPUTS, 0.0);
+    nearestType_[row] = 0;
+    touchingNearest_[row] = false;
+    countOfType_[type.ordinal()]++;
+    return row;
+  }
+
+  // Removes every row that is no longer alive, filling each gap with the last row. Rows of bugs
+  // which survive may change.
+  public void removeDead() {
+    int row = 0;
+    while (row < size_) {
+      if (alive_[row]) {
+        row++;
+        continue;
+      }
+      countOfType_[type_[row]]--;
+      freeGenomeSlot(genomeSlot_[row]);
+      int last = --size_;
+      if (row != last) {
+        // The moved row may be dead too, so it is checked on the next pass
+        moveRow(last, row);
+      }
+    }
+  }
+
+  private void moveRow(int from, int to) {
+    id_[to] = id_[from];
+    x_[to] = x_[from];
+    y_[to] = y_[from];
+    type_[to] = type_[from];
+    alive_[to] = alive_[from];
+    fromInitialBatch_[to] = fromInitialBatch_[from];
+    millisAlive_[to] = millisAlive_[from];
+    millisSlow_[to] = millisSlow_[from];
+    millisSinceLastKill_[to] = millisSinceLastKill_[from];
+    numKillsSinceLastReproduction_[to] = numKillsSinceLastReproduction_[from];
+    reproductionScore_[to] = reproductionScore_[from];
+    color_[to] = color_[from];
+    genomeSlot_[to] = genomeSlot_[from];
+    slotRows_[genomeSlot_[to]] = to;
+    System.arraycopy(
+        inputs_,
+        from * NeuralNet.NUM_INPUTS,
+        inputs_,
+        to * NeuralNet.NUM_INPUTS,
+        NeuralNet.NUM_INPUTS);
+    nearestType_[to] = nearestType_[from];
+    touchingNearest_[to] = touchingNearest_[from];
+  }
+
+  // -- Handles --
+
+  static int slotOfHandle(long handle) {
+    return (int) handle;
+  }
+
+  // Every slot is below this
+  int getNumSlots() {
+    return numGenomeSlots_;
+  }
+
+  // The handle of the bug in this row, which stays the same for as long as the bug lives. Handles
+  // are only meaningful within this population; they are not checkpointed.
+  public long getHandle(int row) {
+    return getHandleOfSlot(genomeSlot_[row]);
+  }
+
+  // The row of the bug with this handle, or -1 if it has been removed
+  public int getRow(long handle) {
+    int slot = slotOfHandle(handle);
+    if (slot < 0 || slot >= numGenomeSlots_ || getHandleOfSlot(slot) != handle) {
+      return -1;
+    }
+    return slotRows_[slot];
+  }
+
+  private long getHandleOfSlot(int slot) {
+    return ((long) slotGenerations_[slot] << 32) | slot;
+  }
+
+  // -- Columns --
+
+  // The raw columns below are for bulk readers such as the spatial index. Only the first size()
+  // entries are meaningful, and they must not be modified.
+
+  public double[] getXs() {
+    return x_;
+  }
+
+  public double[] getYs() {
+    return y_;
+  }
+
+  public int[] getTypeOrdinals() {
+    return type_;
+  }
+
+  // NeuralNet.NUM_INPUTS values per row. Unlike the other raw columns, this one is written to
+  // directly, by each bug as it senses.
+  public double[] getInputs() {
+    return inputs_;
+  }
+
+  public long getId(int row) {
+    return id_[row];
+  }
+
+  public void setId(int row, long id) {
+    id_[row] = id;
+  }
+
+  public double getX(int row) {
+    return x_[row];
+  }
+
+  public void setX(int row, double x) {
+    x_[row] = x;
+  }
+
+  public double getY(int row) {
+    return y_[row];
+  }
+
+  public void setY(int row, double y) {
+    y_[row] = y;
+  }
+
+  public BugType getType(int row) {
+    return BugType.fromOrdinal(type_[row]);
+  }
+
+  public boolean isAlive(int row) {
+    return alive_[row];
+  }
+
+  public void kill(int row) {
+    alive_[row] = false;
+  }
+
+  public boolean isFromInitialBatch(int row) {
+    return fromInitialBatch_[row];
+  }
+
+  public int getMillisAlive(int row) {
+    return millisAlive_[row];
+  }
+
+  public void addMillisAlive(int row, long millis) {
+    millisAlive_[row] += millis;
+  }
+
+  public int getMillisSlow(int row) {
+    return millisSlow_[row];
+  }
+
+  public void setMillisSlow(int row, int millis) {
+    millisSlow_[row] = millis;
+  }
+
+  public void addMillisSlow(int row, long millis) {
+    millisSlow_[row] += millis;
+  }
+
+  public int getMillisSinceLastKill(int row) {
+    return millisSinceLastKill_[row];
+  }
+
+  public void setMillisSinceLastKill(int row, int millis) {
+    millisSinceLastKill_[row] = millis;
+  }
+
+  public void addMillisSinceLastKill(int row, long millis) {
+    millisSinceLastKill_[row] += millis;
+  }
+
+  public int getNumKillsSinceLastReproduction(int row) {
+    return numKillsSinceLastReproduction_[row];
+  }
+
+  public void setNumKillsSinceLastReproduction(int row, int numKills) {
+    numKillsSinceLastReproduction_[row] = numKills;
+  }
+
+  public double getReproductionScore(int row) {
+    return reproductionScore_[row];
+  }
+
+  public void setReproductionScore(int row, double reproductionScore) {
+    reproductionScore_[row] = reproductionScore;
+  }
+
+  public int getColor(int row) {
+    return color_[row];
+  }
+
+  public int getGenomeSlot(int row) {
+    return genomeSlot_[row];
+  }
+
+  public Genome getGenome(int row) {
+    return genomes_[genomeSlot_[row]];
+  }
+
+  public BugType getNearestBugType(int row) {
+    return BugType.fromOrdinal(nearestType_[row]);
+  }
+
+  public boolean isTouchingNearestBug(int row) {
+    return touchingNearest_[row];
+  }
+
+  public void setNearestBug(int row, BugType type, boolean touching) {
+    nearestType_[row] = type.ordinal();
+    touchingNearest_[row] = touching;
+  }
+}
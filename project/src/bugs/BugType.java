@@ -2,5 +2,12 @@ package bugs;
 
 public enum BugType {
   TRADITIONAL,
-  KILLER
+  KILLER;
+
+  private static final BugType[] VALUES = values();
+
+  // values() copies its array on every call, which adds up in per-bug code
+  public static BugType fromOrdinal(int ordinal) {
+    return VALUES[ordinal];
+  }
 }
@@ -0,0 +1,366 @@
+package bugs;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import utils.RandomStream;
+
+// Everything needed to pick a world up exactly where it was: the bugs, the game states and the
+// random streams. A world resumed from a checkpoint ticks on exactly as the original would have.
+//
+// Taking a checkpoint only copies the population's columns, as genomes never change once made and
+// can be shared. Encoding and writing the copy can then happen on any thread, while the world
+// carries on ticking.
+//
+// File layout, big endian:
+//   int MAGIC, int VERSION
+//   world: board width and height, random stream seeds and states, births and rounds so far
+//   game states, in the order they are declared in GameStates
+//   int number of bugs, then for each bug its columns and its genome (see Genome.writeTo)
+public class Checkpoint {
+  private static final int MAGIC = 0x4e4e4350; // "NNCP"
+  private static final int VERSION = 2;
+
+  // -- World --
+  private final int boardWidth_;
+  private final int boardHeight_;
+  private final long masterSeed_;
+  private final int numResets_;
+  private final long worldSeed_;
+  private final long worldState_;
+  private final long bugSeed_;
+  private final long bugState_;
+  private final long numBirths_;
+  private final int round_;
+
+  // -- Game states --
+  private final boolean traditionalMustMove_;
+  private final int traditionalReproductionSeconds_;
+  private final int birthsPerTick_;
+  private final boolean childrenBornNearParents_;
+  private final boolean killersExist_;
+  private final int killerStarvationSeconds_;
+  private final int killerNKillsToReproduce_;
+  private final int bugRadius_;
+
+  // -- Bugs, by row --
+  private final int size_;
+  private final long[] ids_;
+  private final byte[] types_;
+  private final boolean[] fromInitialBatch_;
+  private final double[] xs_;
+  private final double[] ys_;
+  private final int[] millisAlive_;
+  private final int[] millisSlow_;
+  private final int[] millisSinceLastKill_;
+  private final int[] numKillsSinceLastReproduction_;
+  private final double[] reproductionScores_;
+  private final int[] colors_;
+  private final Genome[] genomes_;
+
+  // Copies the state of a world. Must be called between ticks, on the thread that ticks it.
+  Checkpoint(
+      BugPopulation population,
+      RandomStream masterRandom,
+      int numResets,
+      RandomStream worldRandom,
+      RandomStream bugRandoms,
+      long numBirths,
+      int round) {
+    boardWidth_ = population.getWidth();
+    boardHeight_ = population.getHeight();
+    masterSeed_ = masterRandom.getSeed();
+    numResets_ = numResets;
+    worldSeed_ = worldRandom.getSeed();
+    worldState_ = worldRandom.getState();
+    bugSeed_ = bugRandoms.getSeed();
+    bugState_ = bugRandoms.getState();
+    numBirths_ = numBirths;
+    round_ = round;
+
+    traditionalMustMove_ = GameStates.TRADITIONAL_MUST_MOVE.getValue();
+    traditionalReproductionSeconds_ = GameStates.TRADITIONAL_REPRODUCTION_SECONDS.getValue();
+    birthsPerTick_ = GameStates.BIRTHS_PER_TICK.getValue();
+    childrenBornNearParents_ = GameStates.CHILDREN_BORN_NEAR_PARENTS.getValue();
+    killersExist_ = GameStates.KILLERS_EXIST.getValue();
+    killerStarvationSeconds_ = GameStates.KILLER_STARVATION_SECONDS.getValue();
+    killerNKillsToReproduce_ = GameStates.KILLER_N_KILLS_TO_REPRODUCE.getValue();
+    bugRadius_ = GameStates.BUG_RADIUS.getValue();
+
+    size_ = population.size();
+    ids_ = new long[size_];
+    types_ = new byte[size_];
+    fromInitialBatch_ = new boolean[size_];
+    xs_ = new double[size_];
+    ys_ = new double[size_];
+    millisAlive_ = new int[size_];
+    millisSlow_ = new int[size_];
+    millisSinceLastKill_ = new int[size_];
+    numKillsSinceLastReproduction_ = new int[size_];
+    reproductionScores_ = new double[size_];
+    colors_ = new int[size_];
+    genomes_ = new Genome[size_];
+    for (int row = 0; row < size_; row++) {
+      ids_[row] = population.getId(row);
+      types_[row] = (byte) population.getType(row).ordinal();
+      fromInitialBatch_[row] = population.isFromInitialBatch(row);
+      xs_[row] = population.getX(row);
+      ys_[row] = population.getY(row);
+      millisAlive_[row] = population.getMillisAlive(row);
+      millisSlow_[row] = population.getMillisSlow(row);
+      millisSinceLastKill_[row] = population.getMillisSinceLastKill(row);
+      numKillsSinceLastReproduction_[row] = population.getNumKillsSinceLastReproduction(row);
+      reproductionScores_[row] = population.getReproductionScore(row);
+      colors_[row] = population.getColor(row);
+      genomes_[row] = population.getGenome(row);
+    }
+  }
+
+  private Checkpoint(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a checkpoint file");
+    }
+    int version = buffer.getInt();
+    // Version 1 had no bug ids
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+
+    boardWidth_ = buffer.getInt();
+    boardHeight_ = buffer.getInt();
+    masterSeed_ = buffer.getLong();
+    numResets_ = buffer.getInt();
+    worldSeed_ = buffer.getLong();
+    worldState_ = buffer.getLong();
+    bugSeed_ = buffer.getLong();
+    bugState_ = buffer.getLong();
+    numBirths_ = buffer.getLong();
+    round_ = buffer.getInt();
+
+    traditionalMustMove_ = buffer.get() != 0;
+    traditionalReproductionSeconds_ = buffer.getInt();
+    birthsPerTick_ = buffer.getInt();
+    childrenBornNearParents_ = buffer.get() != 0;
+    killersExist_ = buffer.get() != 0;
+    killerStarvationSeconds_ = buffer.getInt();
+    killerNKillsToReproduce_ = buffer.getInt();
+    bugRadius_ = buffer.getInt();
+
+    size_ = buffer.getInt();
+    // Every bug takes at least a genome's hidden layer size, so a corrupt count is caught before
+    // anything is allocated for it
+    if (size_ < 0 || size_ > buffer.remaining() / (getBugSize(null) + Integer.BYTES)) {
+      throw new IOException("Bad number of bugs " + size_);
+    }
+    ids_ = new long[size_];
+    types_ = new byte[size_];
+    fromInitialBatch_ = new boolean[size_];
+    xs_ = new double[size_];
+    ys_ = new double[size_];
+    millisAlive_ = new int[size_];
+    millisSlow_ = new int[size_];
+    millisSinceLastKill_ = new int[size_];
+    numKillsSinceLastReproduction_ = new int[size_];
+    reproductionScores_ = new double[size_];
+    colors_ = new int[size_];
+    genomes_ = new Genome[size_];
+    for (int row = 0; row < size_; row++) {
+      ids_[row] = version >= 2 ? buffer.getLong() : -1;
+      types_[row] = buffer.get();
+      if (types_[row] < 0 || types_[row] >= BugType.values().length) {
+        throw new IOException("Bad bug type " + types_[row]);
+      }
+      fromInitialBatch_[row] = buffer.get() != 0;
+      xs_[row] = buffer.getDouble();
+      ys_[row] = buffer.getDouble();
+      millisAlive_[row] = buffer.getInt();
+      millisSlow_[row] = buffer.getInt();
+      millisSinceLastKill_[row] = buffer.getInt();
+      numKillsSinceLastReproduction_[row] = buffer.getInt();
+      reproductionScores_[row] = buffer.getDouble();
+      colors_[row] = buffer.getInt();
+      try {
+        genomes_[row] = Genome.readFrom(buffer);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Bad genome for bug " + row, e);
+      }
+    }
+  }
+
+  // Bytes before the first bug
+  private static int getHeaderSize() {
+    return (12 * Integer.BYTES) + (6 * Long.BYTES) + 3;
+  }
+
+  // Bytes for one bug, not counting its genome if genome is null
+  private static int getBugSize(Genome genome) {
+    int size = Long.BYTES + 2 + (3 * Double.BYTES) + (5 * Integer.BYTES);
+    return genome == null ? size : size + genome.getSerializedSize();
+  }
+
+  private ByteBuffer encode() {
+    int size = getHeaderSize();
+    for (Genome genome : genomes_) {
+      size += getBugSize(genome);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+
+    buffer.putInt(boardWidth_);
+    buffer.putInt(boardHeight_);
+    buffer.putLong(masterSeed_);
+    buffer.putInt(numResets_);
+    buffer.putLong(worldSeed_);
+    buffer.putLong(worldState_);
+    buffer.putLong(bugSeed_);
+    buffer.putLong(bugState_);
+    buffer.putLong(numBirths_);
+    buffer.putInt(round_);
+
+    buffer.put((byte) (traditionalMustMove_ ? 1 : 0));
+    buffer.putInt(traditionalReproductionSeconds_);
+    buffer.putInt(birthsPerTick_);
+    buffer.put((byte) (childrenBornNearParents_ ? 1 : 0));
+    buffer.put((byte) (killersExist_ ? 1 : 0));
+    buffer.putInt(killerStarvationSeconds_);
+    buffer.putInt(killerNKillsToReproduce_);
+    buffer.putInt(bugRadius_);
+
+    buffer.putInt(size_);
+    for (int row = 0; row < size_; row++) {
+      buffer.putLong(ids_[row]);
+      buffer.put(types_[row]);
+      buffer.put((byte) (fromInitialBatch_[row] ? 1 : 0));
+      buffer.putDouble(xs_[row]);
+      buffer.putDouble(ys_[row]);
+      buffer.putInt(millisAlive_[row]);
+      buffer.putInt(millisSlow_[row]);
+      buffer.putInt(millisSinceLastKill_[row]);
+      buffer.putInt(numKillsSinceLastReproduction_[row]);
+      buffer.putDouble(reproductionScores_[row]);
+      buffer.putInt(colors_[row]);
+      genomes_[row].writeTo(buffer);
+    }
+
+    assert !buffer.hasRemaining() : "Checkpoint size was miscounted";
+    buffer.flip();
+    return buffer;
+  }
+
+  // Writes to a temporary file next to path, then moves it into place, so that a crash part way
+  // through never leaves a broken checkpoint behind
+  public void writeTo(Path path) throws IOException {
+    ByteBuffer buffer = encode();
+    Path absolute = path.toAbsolutePath();
+    Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    }
+    try {
+      Files.move(
+          temporary,
+          absolute,
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  public static Checkpoint readFrom(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new Checkpoint(buffer);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Checkpoint file is truncated", e);
+    }
+  }
+
+  int getBoardWidth() {
+    return boardWidth_;
+  }
+
+  int getBoardHeight() {
+    return boardHeight_;
+  }
+
+  int getNumResets() {
+    return numResets_;
+  }
+
+  long getNumBirths() {
+    return numBirths_;
+  }
+
+  int getRound() {
+    return round_;
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  RandomStream getMasterRandom() {
+    return new RandomStream(masterSeed_);
+  }
+
+  RandomStream getWorldRandom() {
+    return new RandomStream(worldSeed_, worldState_);
+  }
+
+  RandomStream getBugRandoms() {
+    return new RandomStream(bugSeed_, bugState_);
+  }
+
+  // Sets every game state to its value in the checkpoint, right away. Must be called before the
+  // world is ticked.
+  void restoreGameStates() {
+    GameStates.TRADITIONAL_MUST_MOVE.setValueNow(traditionalMustMove_);
+    GameStates.TRADITIONAL_REPRODUCTION_SECONDS.setValueNow(traditionalReproductionSeconds_);
+    GameStates.BIRTHS_PER_TICK.setValueNow(birthsPerTick_);
+    GameStates.CHILDREN_BORN_NEAR_PARENTS.setValueNow(childrenBornNearParents_);
+    GameStates.KILLERS_EXIST.setValueNow(killersExist_);
+    GameStates.KILLER_STARVATION_SECONDS.setValueNow(killerStarvationSeconds_);
+    GameStates.KILLER_N_KILLS_TO_REPRODUCE.setValueNow(killerNKillsToReproduce_);
+    GameStates.BUG_RADIUS.setValueNow(bugRadius_);
+  }
+
+  // A new population holding the checkpointed bugs, in the same rows
+  BugPopulation restorePopulation() {
+    BugPopulation population = new BugPopulation(boardWidth_, boardHeight_);
+    for (int i = 0; i < size_; i++) {
+      int row =
+          population.add(
+              BugType.fromOrdinal(types_[i]),
+              xs_[i],
+              ys_[i],
+              colors_[i],
+              genomes_[i],
+              fromInitialBatch_[i]);
+      population.setId(row, ids_[i]);
+      population.addMillisAlive(row, millisAlive_[i]);
+      population.setMillisSlow(row, millisSlow_[i]);
+      population.setMillisSinceLastKill(row, millisSinceLastKill_[i]);
+      population.setNumKillsSinceLastReproduction(row, numKillsSinceLastReproduction_[i]);
+      population.setReproductionScore(row, reproductionScores_[i]);
+    }
+    return population;
+  }
+}
@@ -0,0 +1,197 @@
+package bugs;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import utils.RandomStream;
+
+// Options for how the simulation is run, as opposed to the rules of the game (see GameStates).
+// These are read once at startup from system properties, e.g. -Dneuralnodes.tickGrainSize=512
+public class EngineOptions {
+  private static final String PREFIX = "neuralnodes.";
+
+  private static int getInt(String name, int defaultValue) {
+    return Integer.getInteger(PREFIX + name, defaultValue);
+  }
+
+  private static long getLong(String name, long defaultValue) {
+    return Long.getLong(PREFIX + name, defaultValue);
+  }
+
+  private static Path getPath(String name) {
+    String value = System.getProperty(PREFIX + name);
+    return value == null || value.trim().isEmpty() ? null : Paths.get(value.trim());
+  }
+
+  private static boolean getBoolean(String name, boolean defaultValue) {
+    String value = System.getProperty(PREFIX + name);
+    return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+  }
+
+  private static <E extends Enum<E>> E getEnum(String name, Class<E> enumClass, E defaultValue) {
+    String value = System.getProperty(PREFIX + name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Enum.valueOf(enumClass, value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      System.err.println("Unknown " + name + " \"" + value + "\", using " + defaultValue);
+      return defaultValue;
+    }
+  }
+
+  // -- Tick grain size --
+  // Number of consecutive bugs each tick task handles before the population is split further
+  private static final int TICK_GRAIN_SIZE = Math.max(1, getInt("tickGrainSize", 256));
+
+  public static int getTickGrainSize() {
+    return TICK_GRAIN_SIZE;
+  }
+
+  // -- Birth grain size --
+  // Number of newborns each task builds the genomes of. Building a genome costs far more than
+  // ticking a bug, so this is much smaller than the tick grain size.
+  private static final int BIRTH_GRAIN_SIZE = Math.max(1, getInt("birthGrainSize", 8));
+
+  public static int getBirthGrainSize() {
+    return BIRTH_GRAIN_SIZE;
+  }
+
+  // -- Spatial index --
+  // KD_TREE and GRID are rebuilt from scratch every tick. INCREMENTAL_GRID is kept from tick to
+  // tick and only has the bugs that moved, died or were born applied to it.
+  public enum SpatialIndexType {
+    KD_TREE,
+    GRID,
+    INCREMENTAL_GRID
+  }
+
+  private static final SpatialIndexType SPATIAL_INDEX =
+      getEnum("spatialIndex", SpatialIndexType.class, SpatialIndexType.KD_TREE);
+
+  public static SpatialIndexType getSpatialIndexType() {
+    return SPATIAL_INDEX;
+  }
+
+  // -- Inference --
+  // SCALAR solves every net with plain loops, and gives the same results on every machine. VECTOR
+  // uses the incubating Vector API (see VectorInferenceKernel), which needs Java 16 or later run
+  // with --add-modules jdk.incubator.vector. Its sums are added up in a different order, so its
+  // results differ slightly from SCALAR's, and from machine to machine with the width of the
+  // vectors.
+  public enum InferenceKernelType {
+    SCALAR,
+    VECTOR
+  }
+
+  private static final InferenceKernelType INFERENCE_KERNEL =
+      getEnum("inference", InferenceKernelType.class, InferenceKernelType.SCALAR);
+
+  public static InferenceKernelType getInferenceKernelType() {
+    return INFERENCE_KERNEL;
+  }
+
+  // -- Precision --
+  // DOUBLE keeps every genome's weights and biases as doubles. SINGLE keeps them as floats, which
+  // halves the memory of every genome, and solves nets in float arithmetic. Genomes are always
+  // saved as doubles, so checkpoints and birth journals can be read in either mode.
+  public enum Precision {
+    DOUBLE,
+    SINGLE
+  }
+
+  private static final Precision PRECISION =
+      getEnum("precision", Precision.class, Precision.DOUBLE);
+
+  public static Precision getPrecision() {
+    return PRECISION;
+  }
+
+  // -- Sensor accuracy --
+  // How exactly bugs work out what they sense each tick (see SensorMath). EXACT uses Math.exp() and
+  // Math.atan2(). FINE and COARSE use a lookup table and a polynomial instead, and are faster, but
+  // their inputs can be off by up to about 1e-5 and 1e-3, so a seed does not replay as with EXACT.
+  public enum SensorAccuracy {
+    EXACT,
+    FINE,
+    COARSE
+  }
+
+  private static final SensorAccuracy SENSOR_ACCURACY =
+      getEnum("sensorAccuracy", SensorAccuracy.class, SensorAccuracy.EXACT);
+
+  public static SensorAccuracy getSensorAccuracy() {
+    return SENSOR_ACCURACY;
+  }
+
+  // -- Metrics --
+  // Whether to start with metrics on. They can also be switched on and off later over JMX.
+  private static final boolean METRICS = getBoolean("metrics", false);
+  // Port on localhost to serve metrics as text on, or 0 for none
+  private static final int METRICS_PORT = getInt("metricsPort", 0);
+
+  public static boolean getMetricsEnabled() {
+    return METRICS;
+  }
+
+  public static int getMetricsPort() {
+    return METRICS_PORT;
+  }
+
+  // -- Checkpoints --
+  // File to save the world to every checkpointInterval ticks, or null to never save it
+  private static final Path CHECKPOINT_FILE = getPath("checkpointFile");
+  // About a minute of real time in the window
+  private static final int CHECKPOINT_INTERVAL = Math.max(1, getInt("checkpointInterval", 3600));
+  // Checkpoint file to resume the world from at startup, or null to start a new world
+  private static final Path RESUME_FILE = getPath("resumeFrom");
+
+  public static Path getCheckpointFile() {
+    return CHECKPOINT_FILE;
+  }
+
+  public static int getCheckpointInterval() {
+    return CHECKPOINT_INTERVAL;
+  }
+
+  public static Path getResumeFile() {
+    return RESUME_FILE;
+  }
+
+  // -- Birth journal --
+  // Directory to log every birth to (see BirthJournal), or null to not log them
+  private static final Path BIRTH_JOURNAL_DIRECTORY = getPath("birthJournal");
+  private static final int BIRTH_JOURNAL_SEGMENT_MEGABYTES =
+      Math.max(1, getInt("birthJournalSegmentMegabytes", 64));
+
+  public static Path getBirthJournalDirectory() {
+    return BIRTH_JOURNAL_DIRECTORY;
+  }
+
+  public static long getBirthJournalSegmentBytes() {
+    return BIRTH_JOURNAL_SEGMENT_MEGABYTES * 1024L * 1024L;
+  }
+
+  // -- Islands --
+  // Ticks between migrations in an IslandModel, and how many of its best bugs of each type every
+  // island sends to the next one
+  private static final int MIGRATION_INTERVAL = Math.max(1, getInt("migrationInterval", 600));
+  private static final int MIGRANTS_PER_TYPE = Math.max(0, getInt("migrantsPerType", 2));
+
+  public static int getMigrationInterval() {
+    return MIGRATION_INTERVAL;
+  }
+
+  public static int getMigrantsPerType() {
+    return MIGRANTS_PER_TYPE;
+  }
+
+  // -- Seed --
+  // Master seed for every random number in the simulation. Runs with the same seed, settings and
+  // ticks produce the same populations. Differs from run to run unless set.
+  private static final long SEED = getLong("seed", RandomStream.randomSeed());
+
+  public static long getSeed() {
+    return SEED;
+  }
+}
@@ -21,6 +21,12 @@ public class GameStates {
             }
           });
     }
+
+    // Changes the value right away rather than between ticks. Only safe while nothing is ticking,
+    // e.g. while restoring a checkpoint.
+    void setValueNow(T newValue) {
+      setValue(newValue);
+    }
   }
 
   // -- Traditional must move --
@@ -40,6 +46,24 @@ public class GameStates {
     return TRADITIONAL_REPRODUCTION_SECONDS.getValue();
   }
 
+  // -- Births per tick --
+  // Number of bugs of each type born from reproduction every tick
+  public static final List<Integer> BIRTHS_PER_TICK_OPTIONS =
+      IntStream.rangeClosed(1, 20).boxed().collect(Collectors.toList());
+  public static GameStateHolder<Integer> BIRTHS_PER_TICK = new GameStateHolder<>(1);
+
+  public static int getBirthsPerTick() {
+    return BIRTHS_PER_TICK.getValue();
+  }
+
+  // -- Children born near parents --
+  // Otherwise, children are born at a random location
+  public static GameStateHolder<Boolean> CHILDREN_BORN_NEAR_PARENTS = new GameStateHolder<>(false);
+
+  public static boolean getChildrenBornNearParents() {
+    return CHILDREN_BORN_NEAR_PARENTS.getValue();
+  }
+
   // -- Killers exist --
   public static GameStateHolder<Boolean> KILLERS_EXIST = new GameStateHolder<>(true);
 
@@ -1,25 +1,47 @@
 package bugs;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
+import utils.RandomStream;
 
+// Every weight and bias of a net, stored in one contiguous block. With h hidden nodes the layout
+// is:
+//   [0, 10h)            input -> hidden weights, hidden node major (the weight from input i to
+//                       hidden node j is at j * 10 + i)
+//   [10h, 11h)          hidden biases
+//   [11h, 13h)          hidden -> output weights, output node major (the weight from hidden node j
+//                       to output k is at 11h + k * h + j)
+//   [13h, 13h + 2)      output biases
+//   [13h + 2, 13h + 12) input biases
+// The first 13h + 2 values are everything a forward pass reads, in the order it reads them, so
+// inference code can walk the block directly (see getParameters()). Input biases are never used by
+// a forward pass and are kept at the end.
+//
+// Genomes are never modified after construction.
+//
+// With -Dneuralnodes.precision=single the block is kept as floats rather than doubles. Genomes are
+// still bred in double arithmetic, and only rounded to float once they are complete, and are
+// always serialized as doubles.
 public class Genome {
   // TODO: Move color into here
   private static final double MUTATION_CHANCE = 0.02;
+  private static final boolean SINGLE_PRECISION =
+      EngineOptions.getPrecision() == EngineOptions.Precision.SINGLE;
 
   private final int nodesInLayer_[];
-  // [starting layer index][starting node][ending node]
-  private final double weights_[][][];
-  // [layer][node]
-  private final double biases_[][];
+  // Exactly one of these is set, depending on SINGLE_PRECISION
+  private final double parameters_[];
+  private final float floatParameters_[];
 
-  private static int generateNumHiddenLayerNodes() {
+  private static int generateNumHiddenLayerNodes(RandomStream random) {
     int diff = NeuralNet.HIDDEN_LAYER_SIZE_UPPER_BOUND - NeuralNet.HIDDEN_LAYER_SIZE_LOWER_BOUND;
-    return BugController.SHARED_RANDOM.nextInt(diff + 1) + NeuralNet.HIDDEN_LAYER_SIZE_LOWER_BOUND;
+    return random.nextInt(diff + 1) + NeuralNet.HIDDEN_LAYER_SIZE_LOWER_BOUND;
   }
 
-  private static int wiggleNumHiddenLayerNodes(int numHiddenLayerNodes) {
-    double choice = BugController.SHARED_RANDOM.nextDouble();
+  private static int wiggleNumHiddenLayerNodes(int numHiddenLayerNodes, RandomStream random) {
+    double choice = random.nextDouble();
     if (choice < 0.05) {
       numHiddenLayerNodes++;
     } else if (choice < 0.1) {
@@ -30,24 +52,17 @@ public class Genome {
         Math.min(NeuralNet.HIDDEN_LAYER_SIZE_UPPER_BOUND, numHiddenLayerNodes));
   }
 
-  private static double generateWeight() {
-    return (BugController.SHARED_RANDOM.nextDouble() * 2.0) - 1.0;
+  private static double generateWeight(RandomStream random) {
+    return (random.nextDouble() * 2.0) - 1.0;
   }
 
-  private static double generateBias() {
-    return generateWeight();
+  private static double wiggleWeight(double weight, RandomStream random) {
+    return weight + ((random.nextDouble() * 0.1) - 0.05);
   }
 
-  private static double wiggleWeight(double weight) {
-    return weight + ((BugController.SHARED_RANDOM.nextDouble() * 0.1) - 0.05);
-  }
-
-  private static double wiggleBias(double bias) {
-    return wiggleWeight(bias);
-  }
-
-  private static <T> T mixGenes(T one, T two, Supplier<T> supplier, UnaryOperator<T> wiggler) {
-    double choice = BugController.SHARED_RANDOM.nextDouble();
+  private static <T> T mixGenes(
+      T one, T two, Supplier<T> supplier, UnaryOperator<T> wiggler, RandomStream random) {
+    double choice = random.nextDouble();
     if (choice < ((1.0 - MUTATION_CHANCE) / 2.0)) {
       return wiggler.apply(one);
     } else if (choice < (1.0 - MUTATION_CHANCE)) {
@@ -57,120 +72,246 @@ public class Genome {
     }
   }
 
-  // Construct a random genome
-  public Genome() {
-    int numHiddenLayerNodes = generateNumHiddenLayerNodes();
-    nodesInLayer_ =
-        new int[] {NeuralNet.NODES_IN_LAYER[0], numHiddenLayerNodes, NeuralNet.NODES_IN_LAYER[2]};
-    weights_ = new double[nodesInLayer_.length - 1][][];
-    for (int i = 0; i < nodesInLayer_.length - 1; i++) {
-      weights_[i] = new double[nodesInLayer_[i]][];
-
-      for (int j = 0; j < weights_[i].length; j++) {
-        weights_[i][j] = new double[nodesInLayer_[i + 1]];
-        for (int k = 0; k < nodesInLayer_[i + 1]; k++) {
-          // start with [-1.0, 1.0] but don't restrict to this
-          weights_[i][j][k] = generateWeight();
-        }
-      }
-    }
-
-    biases_ = new double[nodesInLayer_.length][];
-    for (int i = 0; i < nodesInLayer_.length; i++) {
-      biases_[i] = new double[nodesInLayer_[i]];
-      for (int j = 0; j < nodesInLayer_[i]; j++) {
-        biases_[i][j] = generateBias();
-      }
+  // The same as mixGenes(), without boxing each weight
+  private static double mixParameters(double one, double two, RandomStream random) {
+    double choice = random.nextDouble();
+    if (choice < ((1.0 - MUTATION_CHANCE) / 2.0)) {
+      return wiggleWeight(one, random);
+    } else if (choice < (1.0 - MUTATION_CHANCE)) {
+      return wiggleWeight(two, random);
+    } else {
+      return generateWeight(random);
+    }
+  }
+
+  // -- Layout --
+
+  public static int getNumParameters(int numHidden) {
+    return getInputBiasesOffset(numHidden) + NeuralNet.NUM_INPUTS;
+  }
+
+  // Number of leading parameters that a forward pass uses
+  public static int getNumInferenceParameters(int numHidden) {
+    return getInputBiasesOffset(numHidden);
+  }
+
+  public static int getHiddenBiasesOffset(int numHidden) {
+    return NeuralNet.NUM_INPUTS * numHidden;
+  }
+
+  public static int getOutputWeightsOffset(int numHidden) {
+    return getHiddenBiasesOffset(numHidden) + numHidden;
+  }
+
+  public static int getOutputBiasesOffset(int numHidden) {
+    return getOutputWeightsOffset(numHidden) + (NeuralNet.NUM_OUTPUTS * numHidden);
+  }
+
+  private static int getInputBiasesOffset(int numHidden) {
+    return getOutputBiasesOffset(numHidden) + NeuralNet.NUM_OUTPUTS;
+  }
+
+  // Maps index p of a genome with numHidden hidden nodes to the matching parameter of a genome with
+  // otherHidden hidden nodes. Hidden nodes past the end of the other genome wrap around.
+  private static int mapIndex(int p, int numHidden, int otherHidden) {
+    if (numHidden == otherHidden) {
+      return p;
     }
+    if (p < getHiddenBiasesOffset(numHidden)) {
+      int hidden = p / NeuralNet.NUM_INPUTS;
+      int input = p % NeuralNet.NUM_INPUTS;
+      return ((hidden % otherHidden) * NeuralNet.NUM_INPUTS) + input;
+    } else if (p < getOutputWeightsOffset(numHidden)) {
+      int hidden = p - getHiddenBiasesOffset(numHidden);
+      return getHiddenBiasesOffset(otherHidden) + (hidden % otherHidden);
+    } else if (p < getOutputBiasesOffset(numHidden)) {
+      int q = p - getOutputWeightsOffset(numHidden);
+      int output = q / numHidden;
+      int hidden = q % numHidden;
+      return getOutputWeightsOffset(otherHidden) + (output * otherHidden) + (hidden % otherHidden);
+    } else {
+      return p - getOutputBiasesOffset(numHidden) + getOutputBiasesOffset(otherHidden);
+    }
+  }
+
+  private static double[] keepDoubles(double[] parameters) {
+    return SINGLE_PRECISION ? null : parameters;
+  }
 
+  private static float[] keepFloats(double[] parameters) {
+    if (!SINGLE_PRECISION) {
+      return null;
+    }
+    float[] floats = new float[parameters.length];
+    for (int p = 0; p < parameters.length; p++) {
+      floats[p] = (float) parameters[p];
+    }
+    return floats;
+  }
+
+  private static int[] makeNodesInLayer(int numHiddenLayerNodes) {
+    return new int[] {NeuralNet.NUM_INPUTS, numHiddenLayerNodes, NeuralNet.NUM_OUTPUTS};
+  }
+
+  // Construct a random genome
+  public Genome(RandomStream random) {
+    nodesInLayer_ = makeNodesInLayer(generateNumHiddenLayerNodes(random));
+    double[] parameters = new double[getNumParameters(getNumHiddenNodes())];
+    for (int p = 0; p < parameters.length; p++) {
+      // start with [-1.0, 1.0] but don't restrict to this
+      parameters[p] = generateWeight(random);
+    }
+    parameters_ = keepDoubles(parameters);
+    floatParameters_ = keepFloats(parameters);
     checkGenome();
   }
 
   public Genome(Genome other) {
     nodesInLayer_ = other.nodesInLayer_.clone();
-    weights_ = new double[nodesInLayer_.length - 1][][];
-    for (int i = 0; i < nodesInLayer_.length - 1; i++) {
-      weights_[i] = new double[nodesInLayer_[i]][];
-      for (int j = 0; j < weights_[i].length; j++) {
-        weights_[i][j] = other.weights_[i][j].clone();
-      }
-    }
-    biases_ = new double[nodesInLayer_.length][];
-    for (int i = 0; i < nodesInLayer_.length; i++) {
-      biases_[i] = other.biases_[i].clone();
-    }
+    parameters_ = other.parameters_ == null ? null : other.parameters_.clone();
+    floatParameters_ = other.floatParameters_ == null ? null : other.floatParameters_.clone();
     checkGenome();
   }
 
-  public Genome(Genome genome1, Genome genome2) {
+  public Genome(Genome genome1, Genome genome2, RandomStream random) {
     int numHiddenLayerNodes =
         mixGenes(
-            genome1.nodesInLayer_[1],
-            genome2.nodesInLayer_[1],
-            () -> generateNumHiddenLayerNodes(),
-            (num) -> wiggleNumHiddenLayerNodes(num));
-    nodesInLayer_ =
-        new int[] {NeuralNet.NODES_IN_LAYER[0], numHiddenLayerNodes, NeuralNet.NODES_IN_LAYER[2]};
-
-    // pick weights randomly from the parents, mutating occasionally
-    weights_ = new double[nodesInLayer_.length - 1][][];
-    for (int i = 0; i < nodesInLayer_.length - 1; i++) {
-      weights_[i] = new double[nodesInLayer_[i]][];
-
-      for (int j = 0; j < weights_[i].length; j++) {
-        weights_[i][j] = new double[nodesInLayer_[i + 1]];
-        for (int k = 0; k < nodesInLayer_[i + 1]; k++) {
-          double weight1 =
-              genome1.weights_[i][j % genome1.nodesInLayer_[i]][k % genome1.nodesInLayer_[i + 1]];
-          double weight2 =
-              genome2.weights_[i][j % genome2.nodesInLayer_[i]][k % genome2.nodesInLayer_[i + 1]];
-          weights_[i][j][k] =
-              mixGenes(weight1, weight2, () -> generateWeight(), (w) -> wiggleWeight(w));
-        }
-      }
-    }
-
-    biases_ = new double[nodesInLayer_.length][];
-    for (int i = 0; i < nodesInLayer_.length; i++) {
-      biases_[i] = new double[nodesInLayer_[i]];
-      for (int j = 0; j < nodesInLayer_[i]; j++) {
-        double bias1 = genome1.biases_[i][j % genome1.nodesInLayer_[i]];
-        double bias2 = genome2.biases_[i][j % genome2.nodesInLayer_[i]];
-        biases_[i][j] = mixGenes(bias1, bias2, () -> generateBias(), (b) -> wiggleBias(b));
-      }
+            genome1.getNumHiddenNodes(),
+            genome2.getNumHiddenNodes(),
+            () -> generateNumHiddenLayerNodes(random),
+            (num) -> wiggleNumHiddenLayerNodes(num, random),
+            random);
+    nodesInLayer_ = makeNodesInLayer(numHiddenLayerNodes);
+
+    // pick weights and biases randomly from the parents, mutating occasionally
+    double[] parameters = new double[getNumParameters(numHiddenLayerNodes)];
+    for (int p = 0; p < parameters.length; p++) {
+      double parameter1 =
+          genome1.getParameter(mapIndex(p, numHiddenLayerNodes, genome1.getNumHiddenNodes()));
+      double parameter2 =
+          genome2.getParameter(mapIndex(p, numHiddenLayerNodes, genome2.getNumHiddenNodes()));
+      parameters[p] = mixParameters(parameter1, parameter2, random);
     }
+    parameters_ = keepDoubles(parameters);
+    floatParameters_ = keepFloats(parameters);
+
+    checkGenome();
+  }
 
+  private Genome(int numHiddenLayerNodes, double[] parameters) {
+    nodesInLayer_ = makeNodesInLayer(numHiddenLayerNodes);
+    parameters_ = keepDoubles(parameters);
+    floatParameters_ = keepFloats(parameters);
     checkGenome();
   }
 
   private void checkGenome() {
-    assert weights_.length == (nodesInLayer_.length - 1) : "Bad genome 1";
-    for (int i = 0; i < (nodesInLayer_.length - 1); i++) {
-      assert weights_[i].length == nodesInLayer_[i] : "Bad genome 2";
-      for (int j = 0; j < weights_[i].length; j++) {
-        assert weights_[i][j].length == nodesInLayer_[i + 1] : "Bad genome 3";
-      }
-    }
-    assert biases_.length == (nodesInLayer_.length) : "Bad genome 1";
-    for (int i = 0; i < (nodesInLayer_.length); i++) {
-      assert biases_[i].length == nodesInLayer_[i] : "Bad genome 2";
-    }
+    assert nodesInLayer_.length == 3 : "Bad genome 1";
+    assert getNumStoredParameters() == getNumParameters(getNumHiddenNodes()) : "Bad genome 2";
+  }
+
+  private int getNumStoredParameters() {
+    return SINGLE_PRECISION ? floatParameters_.length : parameters_.length;
+  }
+
+  private double getParameter(int p) {
+    return SINGLE_PRECISION ? floatParameters_[p] : parameters_[p];
   }
 
   public double getWeightAt(int startingLayer, int startingNode, int endingNode) {
     assert (startingLayer == 0 || startingLayer == 1) : "Invalid starting layer";
     assert startingNode < nodesInLayer_[startingLayer] : "Invalid starting node";
     assert endingNode < nodesInLayer_[startingLayer + 1] : "Invalid ending node";
-    return weights_[startingLayer][startingNode][endingNode];
+    int numHidden = getNumHiddenNodes();
+    if (startingLayer == 0) {
+      return getParameter((endingNode * NeuralNet.NUM_INPUTS) + startingNode);
+    }
+    return getParameter(
+        getOutputWeightsOffset(numHidden) + (endingNode * numHidden) + startingNode);
   }
 
   public double getBiasAt(int layer, int node) {
     assert (layer >= 0 && layer < nodesInLayer_.length) : "Invalid starting layer";
     assert node < nodesInLayer_[layer] : "Invalid node";
-    return biases_[layer][node];
+    int numHidden = getNumHiddenNodes();
+    switch (layer) {
+      case 0:
+        return getParameter(getInputBiasesOffset(numHidden) + node);
+      case 1:
+        return getParameter(getHiddenBiasesOffset(numHidden) + node);
+      default:
+        return getParameter(getOutputBiasesOffset(numHidden) + node);
+    }
   }
 
   public int[] getNodesInLayer() {
     return nodesInLayer_;
   }
+
+  public int getNumHiddenNodes() {
+    return nodesInLayer_[1];
+  }
+
+  // Whether genomes keep their parameters as floats, in which case getFloatParameters() holds them
+  // rather than getParameters()
+  public static boolean isSinglePrecision() {
+    return SINGLE_PRECISION;
+  }
+
+  // The whole block, laid out as described at the top of this class, or null if
+  // isSinglePrecision(). Must not be modified.
+  public double[] getParameters() {
+    return parameters_;
+  }
+
+  // The whole block as floats, or null unless isSinglePrecision(). Must not be modified.
+  public float[] getFloatParameters() {
+    return floatParameters_;
+  }
+
+  // -- Serialization --
+  // Parameters are written as doubles in either precision, so that what one writes the other can
+  // read. Floats widen to doubles exactly.
+
+  public int getSerializedSize() {
+    return Integer.BYTES + (getNumStoredParameters() * Double.BYTES);
+  }
+
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(getNumHiddenNodes());
+    for (int p = 0; p < getNumStoredParameters(); p++) {
+      buffer.putDouble(getParameter(p));
+    }
+  }
+
+  public static Genome readFrom(ByteBuffer buffer) {
+    int numHidden = buffer.getInt();
+    if (numHidden < NeuralNet.HIDDEN_LAYER_SIZE_LOWER_BOUND
+        || numHidden > NeuralNet.HIDDEN_LAYER_SIZE_UPPER_BOUND) {
+      throw new IllegalArgumentException("Bad hidden layer size " + numHidden);
+    }
+    double[] parameters = new double[getNumParameters(numHidden)];
+    for (int p = 0; p < parameters.length; p++) {
+      parameters[p] = buffer.getDouble();
+    }
+    return new Genome(numHidden, parameters);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof Genome)) {
+      return false;
+    }
+    return Arrays.equals(parameters_, ((Genome) other).parameters_)
+        && Arrays.equals(floatParameters_, ((Genome) other).floatParameters_)
+        && getNumHiddenNodes() == ((Genome) other).getNumHiddenNodes();
+  }
+
+  @Override
+  public int hashCode() {
+    return SINGLE_PRECISION ? Arrays.hashCode(floatParameters_) : Arrays.hashCode(parameters_);
+  }
 }
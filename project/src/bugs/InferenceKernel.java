@@ -0,0 +1,48 @@
+package bugs;
+
+import bugs.EngineOptions.InferenceKernelType;
+
+// Solves one net from its inputs and its packed parameters (see Genome.getParameters()). Kernels
+// hold no state, so one kernel can be shared by every thread.
+public interface InferenceKernel {
+  // Writes the NeuralNet.NUM_OUTPUTS outputs of the net with numHidden hidden nodes to
+  // outputs[outputOffset...], given the NeuralNet.NUM_INPUTS inputs at inputs[inputOffset...].
+  // hidden is scratch space for at least numHidden values.
+  void solve(
+      double[] inputs,
+      int inputOffset,
+      double[] parameters,
+      int numHidden,
+      double[] hidden,
+      double[] outputs,
+      int outputOffset);
+
+  // The same, in float arithmetic, for genomes kept as floats (see Genome.isSinglePrecision()).
+  // Inputs are given as floats too. Outputs are widened to double.
+  void solve(
+      float[] inputs,
+      int inputOffset,
+      float[] parameters,
+      int numHidden,
+      float[] hidden,
+      double[] outputs,
+      int outputOffset);
+
+  // The kernel of this type, or null if it cannot run here
+  static InferenceKernel load(InferenceKernelType type) {
+    switch (type) {
+      case VECTOR:
+        // Compiled separately, and needs a module which may not be present, so it is only ever
+        // touched by name
+        try {
+          return (InferenceKernel)
+              Class.forName("bugs.VectorInferenceKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+          return null;
+        }
+      case SCALAR:
+      default:
+        return new ScalarInferenceKernel();
+    }
+  }
+}
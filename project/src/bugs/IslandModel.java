@@ -0,0 +1,115 @@
+package bugs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import utils.RandomStream;
+
+// Several worlds, or islands, evolving side by side, one per thread. Every migrationInterval ticks
+// the islands pause, and each sends copies of its best bugs of each type to the next island in a
+// ring, so that good genomes spread slowly while each island keeps its own character.
+//
+// Islands are seeded from a master seed, tick on a fixed schedule and only meet between ticks, so
+// two runs with the same seed and settings are identical no matter how the threads are scheduled.
+// They share the game states, which apply to every island alike.
+public class IslandModel {
+  private final List<BugController> islands_ = new ArrayList<>();
+  private final ExecutorService executor_;
+  private final int migrationInterval_;
+  private final int migrantsPerType_;
+  private long tick_;
+
+  // If birthJournalDirectory is set, each island logs its births to its own directory in it, named
+  // island-N. Islands are never checkpointed.
+  public IslandModel(
+      int numIslands,
+      int boardWidth,
+      int boardHeight,
+      long seed,
+      int migrationInterval,
+      int migrantsPerType,
+      Path birthJournalDirectory) {
+    assert numIslands > 0 : "Need at least one island";
+    RandomStream seeds = new RandomStream(seed);
+    for (int i = 0; i < numIslands; i++) {
+      Path journal =
+          birthJournalDirectory == null ? null : birthJournalDirectory.resolve("island-" + i);
+      islands_.add(
+          new BugController(boardWidth, boardHeight, seeds.derive(i).getSeed(), journal, null));
+    }
+    executor_ =
+        Executors.newFixedThreadPool(
+            numIslands,
+            runnable -> {
+              Thread thread = new Thread(runnable, "island");
+              thread.setDaemon(true);
+              return thread;
+            });
+    migrationInterval_ = migrationInterval;
+    migrantsPerType_ = migrantsPerType;
+  }
+
+  // Islands as set by EngineOptions
+  public IslandModel(int numIslands, int boardWidth, int boardHeight) {
+    this(
+        numIslands,
+        boardWidth,
+        boardHeight,
+        EngineOptions.getSeed(),
+        EngineOptions.getMigrationInterval(),
+        EngineOptions.getMigrantsPerType(),
+        EngineOptions.getBirthJournalDirectory());
+  }
+
+  public int getNumIslands() {
+    return islands_.size();
+  }
+
+  public BugController getIsland(int island) {
+    return islands_.get(island);
+  }
+
+  // Ticks every island once, each on its own thread, then migrates if it is time to
+  public void tick(long millisElapsed) {
+    List<Future<?>> ticks = new ArrayList<>();
+    for (BugController island : islands_) {
+      ticks.add(executor_.submit(() -> island.tick(millisElapsed)));
+    }
+    for (Future<?> tick : ticks) {
+      try {
+        tick.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while ticking islands", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("An island failed to tick", e.getCause());
+      }
+    }
+
+    tick_++;
+    if (islands_.size() > 1 && migrantsPerType_ > 0 && tick_ % migrationInterval_ == 0) {
+      migrate();
+    }
+  }
+
+  // Every island picks its emigrants before any arrive, so no bug moves more than one island
+  private void migrate() {
+    List<List<Migrant>> emigrants = new ArrayList<>();
+    for (BugController island : islands_) {
+      emigrants.add(island.selectEmigrants(migrantsPerType_));
+    }
+    for (int i = 0; i < islands_.size(); i++) {
+      int from = (i + islands_.size() - 1) % islands_.size();
+      islands_.get(i).addImmigrants(emigrants.get(from));
+    }
+  }
+
+  // Stops the island threads. The model cannot be ticked afterwards.
+  public void shutdown() {
+    executor_.shutdown();
+  }
+}
@@ -1,73 +1,53 @@
 package bugs;
 
-import utils.Vector2d;
-
 public class KillerBug extends Bug {
-  private int millisSinceLastKill_ = 0;
-  private int numKillsSinceLastReproduction_ = 0;
-
-  public KillerBug(Vector2d position) {
-    super(position);
-  }
-
-  public KillerBug(KillerBug other) {
-    super(other);
-    millisSinceLastKill_ = other.millisSinceLastKill_;
-    numKillsSinceLastReproduction_ = other.numKillsSinceLastReproduction_;
-  }
-
-  public KillerBug(KillerBug bug1, KillerBug bug2, Vector2d position) {
-    super(bug1, bug2, position);
-  }
-
-  @Override
-  public KillerBug clone() {
-    return new KillerBug(this);
-  }
-
   @Override
   public BugType getBugType() {
     return BugType.KILLER;
   }
 
   @Override
-  protected void onTickStart(long millisElapsed) {
-    millisSinceLastKill_ += millisElapsed;
+  protected void onTickStart(BugPopulation population, int row, long millisElapsed) {
+    super.onTickStart(population, row, millisElapsed);
+    population.addMillisSinceLastKill(row, millisElapsed);
   }
 
   @Override
-  protected double calculateReproductionScore() {
+  protected double calculateReproductionScore(BugPopulation population, int row) {
     // Once bug reaches GameStates.getKillerNKillsToReproduce() kills, it should have a reproduction
     // score of `1`, so that it is allowed to reproduce
-    return numKillsSinceLastReproduction_ - (GameStates.getKillerNKillsToReproduce() - 1);
+    return population.getNumKillsSinceLastReproduction(row)
+        - (GameStates.getKillerNKillsToReproduce() - 1);
   }
 
   @Override
-  protected void updateStateAfterReproduction() {
-    numKillsSinceLastReproduction_ = 0;
+  protected void updateStateAfterReproduction(BugPopulation population, int row) {
+    population.setNumKillsSinceLastReproduction(row, 0);
   }
 
   @Override
-  public boolean isAlive() {
+  public boolean isAlive(BugPopulation population, int row) {
     if (!GameStates.getKillersExist()) {
       return false;
     }
-    return super.isAlive();
+    return super.isAlive(population, row);
   }
 
   @Override
-  protected boolean killedByBug(boolean touchingClosestBug, BugType closestBugType) {
+  protected boolean killedByBug(
+      BugPopulation population, int row, boolean touchingClosestBug, BugType closestBugType) {
     if (touchingClosestBug) {
       if (closestBugType == BugType.KILLER) {
         return true;
       } else {
-        millisSinceLastKill_ = 0;
-        numKillsSinceLastReproduction_++;
+        population.setMillisSinceLastKill(row, 0);
+        population.setNumKillsSinceLastReproduction(
+            row, population.getNumKillsSinceLastReproduction(row) + 1);
         return false;
       }
     }
     // TODO: put this check somewhere else
-    if ((millisSinceLastKill_ / 1000.0) > GameStates.getKillerStarvationSeconds()) 
+    if ((population.getMillisSinceLastKill(row) / 1000.0) > GameStates.getKillerStarvationSeconds())
     {
       return true;
     }
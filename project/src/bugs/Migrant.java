@@ -0,0 +1,28 @@
+package bugs;
+
+// A bug on its way from one world to another (see IslandModel). Carries what makes the bug who it
+// is, its species, genome and color, but nothing about where it was or how it was doing.
+public class Migrant {
+  private final BugType type_;
+  // Genomes never change, so a migrant can share its genome with the bug it came from
+  private final Genome genome_;
+  private final int color_;
+
+  Migrant(BugType type, Genome genome, int color) {
+    type_ = type;
+    genome_ = genome;
+    color_ = color;
+  }
+
+  public BugType getType() {
+    return type_;
+  }
+
+  public Genome getGenome() {
+    return genome_;
+  }
+
+  public int getColor() {
+    return color_;
+  }
+}
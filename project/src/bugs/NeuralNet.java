@@ -6,8 +6,10 @@ import java.util.concurrent.Executors;
 public class NeuralNet {
   public static final ExecutorService SHARED_NODE_SOLVE_EXECUTOR = Executors.newWorkStealingPool();
 
+  public static final int NUM_INPUTS = 10;
+  public static final int NUM_OUTPUTS = 2;
   // -1 represents undefined
-  public static final int NODES_IN_LAYER[] = {10, -1, 2};
+  public static final int NODES_IN_LAYER[] = {NUM_INPUTS, -1, NUM_OUTPUTS};
   public static final int HIDDEN_LAYER_SIZE_LOWER_BOUND = 1;
   public static final int HIDDEN_LAYER_SIZE_UPPER_BOUND = 10;
 
@@ -24,7 +26,8 @@ public class NeuralNet {
   }
 
   public NeuralNet(NeuralNet other) {
-    genome_ = new Genome(other.genome_);
+    // Genomes are immutable, so the copy can share it
+    genome_ = other.genome_;
     nodesInLayer_ = genome_.getNodesInLayer();
     nodeValues_ = new double[getNumLayers()][];
     for (int i = 0; i < getNumLayers(); i++) {
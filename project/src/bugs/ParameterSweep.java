@@ -0,0 +1,279 @@
+package bugs;
+
+import bugs.GameStates.GameStateHolder;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import utils.RandomStream;
+
+// Runs many headless worlds for each of a list of game settings, and writes a summary of every run
+// to a CSV file as soon as it finishes, for exploring the settings without sitting at the window.
+//
+// The game states are shared by every world in the program, so settings are taken one at a time:
+// all the runs of one setting go at once on a bounded pool of threads, and the next setting is
+// only applied once they have all finished. Run n of every setting starts from the same seed, so
+// that differences between settings are not down to luck.
+//
+// Each run reports, for each type of bug:
+//   mean, cv        mean and coefficient of variation of the population, sampled every tick after
+//                   the first fifth of the run. A lower cv is a more stable population.
+//   refill_ticks    number of ticks in which the type could not keep itself at its minimum
+//                   population, and was topped up with random bugs
+//   extinction_tick first tick in which the last bug of the type died, before it was topped up
+//                   with random bugs, or -1 if it never did
+//   mean_hidden     mean number of hidden nodes in the nets of the bugs alive at the end
+public class ParameterSweep {
+  private static class Parameter {
+    private final GameStateHolder<Integer> holder_;
+    private final List<Integer> options_;
+
+    private Parameter(GameStateHolder<Integer> holder, List<Integer> options) {
+      holder_ = holder;
+      options_ = options;
+    }
+  }
+
+  // Settings which can be swept, by the names used for them in sweeps and results
+  private static final Map<String, Parameter> PARAMETERS = new LinkedHashMap<>();
+
+  static {
+    PARAMETERS.put(
+        "traditional_reproduction_seconds",
+        new Parameter(
+            GameStates.TRADITIONAL_REPRODUCTION_SECONDS,
+            GameStates.TRADITIONAL_REPRODUCTION_SECONDS_OPTIONS));
+    PARAMETERS.put(
+        "killer_starvation_seconds",
+        new Parameter(
+            GameStates.KILLER_STARVATION_SECONDS, GameStates.KILLER_STARVATION_SECONDS_OPTIONS));
+    PARAMETERS.put(
+        "killer_n_kills_to_reproduce",
+        new Parameter(
+            GameStates.KILLER_N_KILLS_TO_REPRODUCE,
+            GameStates.KILLER_N_KILLS_TO_REPRODUCE_OPTIONS));
+    PARAMETERS.put(
+        "bug_radius", new Parameter(GameStates.BUG_RADIUS, GameStates.BUG_RADIUS_OPTIONS));
+    PARAMETERS.put(
+        "births_per_tick",
+        new Parameter(GameStates.BIRTHS_PER_TICK, GameStates.BIRTHS_PER_TICK_OPTIONS));
+  }
+
+  private final int boardWidth_;
+  private final int boardHeight_;
+  private final long ticks_;
+  private final long millisPerTick_;
+  private final int runsPerSetting_;
+  private final int numThreads_;
+  private final long seed_;
+
+  public ParameterSweep(
+      int boardWidth,
+      int boardHeight,
+      long ticks,
+      long millisPerTick,
+      int runsPerSetting,
+      int numThreads,
+      long seed) {
+    assert ticks > 0 : "Runs must have an end";
+    assert runsPerSetting > 0 && numThreads > 0 : "Need at least one run and one thread";
+    boardWidth_ = boardWidth;
+    boardHeight_ = boardHeight;
+    ticks_ = ticks;
+    millisPerTick_ = millisPerTick;
+    runsPerSetting_ = runsPerSetting;
+    numThreads_ = numThreads;
+    seed_ = seed;
+  }
+
+  public static List<String> getParameterNames() {
+    return new ArrayList<>(PARAMETERS.keySet());
+  }
+
+  // Every value the parameter can be set to
+  public static List<Integer> getOptions(String name) {
+    return getParameter(name).options_;
+  }
+
+  private static Parameter getParameter(String name) {
+    Parameter parameter = PARAMETERS.get(name);
+    if (parameter == null) {
+      throw new IllegalArgumentException(
+          "Unknown parameter " + name + ", expected one of " + PARAMETERS.keySet());
+    }
+    return parameter;
+  }
+
+  // Every combination of the given values, the last parameter changing fastest
+  public static List<Map<String, Integer>> grid(Map<String, List<Integer>> values) {
+    List<Map<String, Integer>> settings = new ArrayList<>();
+    settings.add(new LinkedHashMap<>());
+    for (Map.Entry<String, List<Integer>> entry : values.entrySet()) {
+      List<Map<String, Integer>> extended = new ArrayList<>();
+      for (Map<String, Integer> setting : settings) {
+        for (int value : entry.getValue()) {
+          Map<String, Integer> copy = new LinkedHashMap<>(setting);
+          copy.put(entry.getKey(), value);
+          extended.add(copy);
+        }
+      }
+      settings = extended;
+    }
+    return settings;
+  }
+
+  // count settings, each picking every parameter's value at random from the given values
+  public static List<Map<String, Integer>> sample(
+      Map<String, List<Integer>> values, int count, long seed) {
+    RandomStream random = new RandomStream(seed);
+    List<Map<String, Integer>> settings = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, Integer> setting = new LinkedHashMap<>();
+      for (Map.Entry<String, List<Integer>> entry : values.entrySet()) {
+        List<Integer> options = entry.getValue();
+        setting.put(entry.getKey(), options.get(random.nextInt(options.size())));
+      }
+      settings.add(setting);
+    }
+    return settings;
+  }
+
+  // Runs every setting, overwriting results with one line per run in the order they finish. Every
+  // setting must name the same parameters. The game states are put back as they were afterwards.
+  // GameStates.initialize() must have been called, and nothing else may tick meanwhile.
+  public void run(List<Map<String, Integer>> settings, Path results) throws IOException {
+    if (settings.isEmpty()) {
+      return;
+    }
+    List<String> names = new ArrayList<>(settings.get(0).keySet());
+    for (Map<String, Integer> setting : settings) {
+      if (!setting.keySet().equals(settings.get(0).keySet())) {
+        throw new IllegalArgumentException("Settings name different parameters: " + setting);
+      }
+      for (String name : names) {
+        if (!getParameter(name).options_.contains(setting.get(name))) {
+          throw new IllegalArgumentException(
+              "Bad value for " + name + ": " + setting.get(name) + " in " + setting);
+        }
+      }
+    }
+
+    Map<String, Integer> originals = new LinkedHashMap<>();
+    for (String name : names) {
+      originals.put(name, getParameter(name).holder_.getValue());
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            numThreads_,
+            runnable -> {
+              Thread thread = new Thread(runnable, "sweep-run");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try (BufferedWriter out = Files.newBufferedWriter(results)) {
+      out.write(header(names));
+      out.flush();
+      RandomStream seeds = new RandomStream(seed_);
+      for (int index = 0; index < settings.size(); index++) {
+        Map<String, Integer> setting = settings.get(index);
+        apply(setting);
+
+        CompletionService<String> runs = new ExecutorCompletionService<>(executor);
+        for (int run = 0; run < runsPerSetting_; run++) {
+          int settingIndex = index;
+          int runIndex = run;
+          long seed = seeds.derive(run).getSeed();
+          runs.submit(() -> runOnce(settingIndex, runIndex, seed, setting));
+        }
+        for (int run = 0; run < runsPerSetting_; run++) {
+          out.write(runs.take().get());
+          out.flush();
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted during sweep", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A sweep run failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+      apply(originals);
+    }
+  }
+
+  private static void apply(Map<String, Integer> setting) {
+    for (Map.Entry<String, Integer> entry : setting.entrySet()) {
+      getParameter(entry.getKey()).holder_.setValueNow(entry.getValue());
+    }
+  }
+
+  private static String header(List<String> names) {
+    StringBuilder line = new StringBuilder("setting,run,seed");
+    for (String name : names) {
+      line.append(',').append(name);
+    }
+    for (BugType type : BugType.values()) {
+      String prefix = type.name().toLowerCase(Locale.ROOT);
+      for (String column :
+          new String[] {"mean", "cv", "refill_ticks", "extinction_tick", "mean_hidden"}) {
+        line.append(',').append(prefix).append('_').append(column);
+      }
+    }
+    return line.append(",seconds\n").toString();
+  }
+
+  // Runs one world to the end, and returns its line of the results
+  private String runOnce(int settingIndex, int run, long seed, Map<String, Integer> setting) {
+    long startNanos = System.nanoTime();
+    BugController world = new BugController(boardWidth_, boardHeight_, seed, null, null);
+    int numTypes = BugType.values().length;
+    double[] sums = new double[numTypes];
+    double[] sumsOfSquares = new double[numTypes];
+    long warmupTicks = ticks_ / 5;
+
+    for (long tick = 1; tick <= ticks_; tick++) {
+      world.tick(millisPerTick_);
+      for (BugType type : BugType.values()) {
+        int t = type.ordinal();
+        if (tick > warmupTicks) {
+          int count = world.getBugCount(type);
+          sums[t] += count;
+          sumsOfSquares[t] += (double) count * count;
+        }
+      }
+    }
+
+    StringBuilder line = new StringBuilder();
+    line.append(settingIndex).append(',').append(run).append(',').append(seed);
+    for (int value : setting.values()) {
+      line.append(',').append(value);
+    }
+    long samples = ticks_ - warmupTicks;
+    for (BugType type : BugType.values()) {
+      int t = type.ordinal();
+      double mean = sums[t] / samples;
+      double variance = Math.max(0.0, (sumsOfSquares[t] / samples) - (mean * mean));
+      line.append(',').append(format(mean));
+      line.append(',').append(format(mean > 0.0 ? Math.sqrt(variance) / mean : Double.NaN));
+      line.append(',').append(world.getTicksBelowMinimum(type));
+      line.append(',').append(world.getFirstExtinctionTick(type));
+      line.append(',').append(format(world.getMeanHiddenNodes(type)));
+    }
+    line.append(',').append(format((System.nanoTime() - startNanos) / 1e9));
+    return line.append('\n').toString();
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.4f", value);
+  }
+}
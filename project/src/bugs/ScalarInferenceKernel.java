@@ -0,0 +1,76 @@
+package bugs;
+
+// Plain loops, adding up every sum in the same order as NeuralNet.solveNet(), so the results match
+// it exactly for genomes kept as doubles
+class ScalarInferenceKernel implements InferenceKernel {
+  private static final int NUM_INPUTS = NeuralNet.NUM_INPUTS;
+  private static final int NUM_OUTPUTS = NeuralNet.NUM_OUTPUTS;
+
+  @Override
+  public void solve(
+      double[] inputs,
+      int inputOffset,
+      double[] parameters,
+      int numHidden,
+      double[] hidden,
+      double[] outputs,
+      int outputOffset) {
+    int hiddenBiases = Genome.getHiddenBiasesOffset(numHidden);
+    int outputWeights = Genome.getOutputWeightsOffset(numHidden);
+    int outputBiases = Genome.getOutputBiasesOffset(numHidden);
+
+    for (int j = 0; j < numHidden; j++) {
+      int weights = j * NUM_INPUTS;
+      double value = 0.0;
+      for (int k = 0; k < NUM_INPUTS; k++) {
+        value += inputs[inputOffset + k] * parameters[weights + k];
+      }
+      value += parameters[hiddenBiases + j];
+      hidden[j] = Math.max(0, value);
+    }
+
+    for (int k = 0; k < NUM_OUTPUTS; k++) {
+      int weights = outputWeights + (k * numHidden);
+      double value = 0.0;
+      for (int j = 0; j < numHidden; j++) {
+        value += hidden[j] * parameters[weights + j];
+      }
+      value += parameters[outputBiases + k];
+      outputs[outputOffset + k] = value;
+    }
+  }
+
+  @Override
+  public void solve(
+      float[] inputs,
+      int inputOffset,
+      float[] parameters,
+      int numHidden,
+      float[] hidden,
+      double[] outputs,
+      int outputOffset) {
+    int hiddenBiases = Genome.getHiddenBiasesOffset(numHidden);
+    int outputWeights = Genome.getOutputWeightsOffset(numHidden);
+    int outputBiases = Genome.getOutputBiasesOffset(numHidden);
+
+    for (int j = 0; j < numHidden; j++) {
+      int weights = j * NUM_INPUTS;
+      float value = 0.0f;
+      for (int k = 0; k < NUM_INPUTS; k++) {
+        value += inputs[inputOffset + k] * parameters[weights + k];
+      }
+      value += parameters[hiddenBiases + j];
+      hidden[j] = Math.max(0.0f, value);
+    }
+
+    for (int k = 0; k < NUM_OUTPUTS; k++) {
+      int weights = outputWeights + (k * numHidden);
+      float value = 0.0f;
+      for (int j = 0; j < numHidden; j++) {
+        value += hidden[j] * parameters[weights + j];
+      }
+      value += parameters[outputBiases + k];
+      outputs[outputOffset + k] = value;
+    }
+  }
+}
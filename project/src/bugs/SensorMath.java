@@ -0,0 +1,188 @@
+package bugs;
+
+import bugs.EngineOptions.SensorAccuracy;
+
+// Turns what a bug sees into the inputs of its net: how close each wall is, four "eyes" which see
+// the nearest bug, and whether that bug is of the same type. Closeness is a sigmoid of distance,
+// and each eye falls off with the angle between the nearest bug and the way it points.
+//
+// EXACT works this out with Math.exp() and Math.atan2(). FINE and COARSE look the sigmoid up in a
+// table, interpolating linearly between entries, and find the angle with a polynomial for atan.
+// Both are continuous. Their tables end in exactly 0 and 1, and clamp to those beyond +-limit of
+// the center, where the exact sigmoid is still 8e-7 (FINE, limit 14) or 4.5e-5 (COARSE, limit 10)
+// away from them. The largest error in any input is about 1e-5 for FINE and 1e-3 for COARSE (see
+// bench.SensorCheck).
+public final class SensorMath {
+  private static final double EYE_CONE_ANGLE =
+      180.0 * (Math.PI / 180.0); // Find a good minimum for this
+
+  private final SensorAccuracy accuracy_;
+  // Sigmoid at evenly spaced points over [-sigmoidLimit_, sigmoidLimit_], or null for EXACT
+  private final double[] sigmoidTable_;
+  private final double sigmoidLimit_;
+  private final double sigmoidScale_;
+
+  public SensorMath(SensorAccuracy accuracy) {
+    accuracy_ = accuracy;
+    int intervals;
+    switch (accuracy) {
+      case FINE:
+        // Interpolation error at most 2e-6, and clamping error at most 8e-7
+        intervals = 2048;
+        sigmoidLimit_ = 14.0;
+        break;
+      case COARSE:
+        // 7e-5 and 4.5e-5
+        intervals = 256;
+        sigmoidLimit_ = 10.0;
+        break;
+      case EXACT:
+      default:
+        sigmoidTable_ = null;
+        sigmoidLimit_ = 0.0;
+        sigmoidScale_ = 0.0;
+        return;
+    }
+    sigmoidScale_ = intervals / (2.0 * sigmoidLimit_);
+    sigmoidTable_ = new double[intervals + 1];
+    for (int i = 1; i < intervals; i++) {
+      sigmoidTable_[i] = 1.0 / (1.0 + Math.exp(sigmoidLimit_ - (i / sigmoidScale_)));
+    }
+    sigmoidTable_[intervals] = 1.0;
+  }
+
+  public SensorAccuracy getAccuracy() {
+    return accuracy_;
+  }
+
+  // Sigmoid stepping up from 0 to 1 around xCenter, or down from 1 to 0 if not forwards. The larger
+  // the tightness, the sharper the step.
+  public double sigmoid(boolean forwards, double tightness, double xCenter, double x) {
+    if (sigmoidTable_ == null) {
+      double sig = 1.0 / (1.0 + Math.exp(-1.0 * tightness * (x - xCenter)));
+      if (!forwards) {
+        sig = 1 - sig;
+      }
+      return sig;
+    }
+    // 1 - sigmoid(z) is sigmoid(-z)
+    double z = tightness * (x - xCenter);
+    double position = ((forwards ? z : -z) + sigmoidLimit_) * sigmoidScale_;
+    // Also catches NaN
+    if (!(position > 0.0)) {
+      return 0.0;
+    }
+    int last = sigmoidTable_.length - 1;
+    if (position >= last) {
+      return 1.0;
+    }
+    int i = (int) position;
+    double fraction = position - i;
+    return sigmoidTable_[i] + (fraction * (sigmoidTable_[i + 1] - sigmoidTable_[i]));
+  }
+
+  // Angle of (dx, dy) counterclockwise from the positive x axis, in [0, 2 * PI]. May be 2 * PI
+  // rather than 0 when not EXACT, which every eye sees the same.
+  public double angle(double dy, double dx) {
+    if (sigmoidTable_ == null) {
+      double angle = Math.atan2(dy, dx);
+      if (angle < 0) {
+        angle += (2 * Math.PI);
+      }
+      return angle;
+    }
+    double absX = Math.abs(dx);
+    double absY = Math.abs(dy);
+    double larger = Math.max(absX, absY);
+    // Also catches NaN, as Math.atan2() gives 0 for (0, 0)
+    if (!(larger > 0.0)) {
+      return 0.0;
+    }
+    // atan of a ratio in [0, 1], then unfolded into the right octant
+    double angle = atanOfRatio(Math.min(absX, absY) / larger);
+    if (absY > absX) {
+      angle = (Math.PI / 2.0) - angle;
+    }
+    if (dx < 0) {
+      angle = Math.PI - angle;
+    }
+    if (dy < 0) {
+      angle = (2.0 * Math.PI) - angle;
+    }
+    return angle;
+  }
+
+  // atan(t) for t in [0, 1]
+  private double atanOfRatio(double t) {
+    if (accuracy_ == SensorAccuracy.COARSE) {
+      // Within 1.5e-3 radians
+      return ((Math.PI / 4.0) * t) - (t * (t - 1.0) * (0.2447 + (0.0663 * t)));
+    }
+    // Within 1e-5 radians (Abramowitz and Stegun 4.4.47)
+    double t2 = t * t;
+    return t
+        * (0.9998660
+            + (t2 * (-0.3302995 + (t2 * (0.1801410 + (t2 * (-0.0851330 + (t2 * 0.0208351))))))));
+  }
+
+  // Writes the NeuralNet.NUM_INPUTS inputs of a bug at (x, y) in a world of the given size to
+  // inputs[base...], given where the nearest other bug is and how far away it is.
+  public void sense(
+      int width,
+      int height,
+      double x,
+      double y,
+      double otherX,
+      double otherY,
+      double distanceSquared,
+      boolean sameType,
+      double[] inputs,
+      int base) {
+    double sigmoidTightness = GameStates.getBugRadius() * .02;
+    double sigmoidRange = GameStates.getBugRadius() * 5;
+
+    // First four inputs are closeness to walls
+    double leftWall = sigmoid(false, sigmoidTightness, sigmoidRange, x);
+    double rightWall = sigmoid(true, sigmoidTightness, width - sigmoidRange, x);
+    double bottomWall = sigmoid(false, sigmoidTightness, sigmoidRange, y);
+    double topWall = sigmoid(true, sigmoidTightness, height - sigmoidRange, y);
+
+    // Next four inputs are four "eyes" with cones pointing right, up, left, and
+    // down. The value input to the neurons corresponding to these cones is the
+    // product of a sigmoid based on distance, and a falloff function based on angle
+    // away from the center of the cone
+    double distance = Math.sqrt(distanceSquared);
+    double distanceSigmoid = sigmoid(false, sigmoidTightness, sigmoidRange, distance);
+    double angle = angle(otherY - y, otherX - x);
+
+    double rightEye = Math.max(0, 1.0 - (Math.abs(angle - 0.0) / (EYE_CONE_ANGLE / 2.0)));
+    rightEye +=
+        Math.max(0, 1.0 - (Math.abs(angle - (2.0 * Math.PI)) / (EYE_CONE_ANGLE / 2.0)));
+    double topEye =
+        Math.max(0, 1.0 - (Math.abs(angle - (Math.PI / 2.0)) / (EYE_CONE_ANGLE / 2.0)));
+    double leftEye = Math.max(0, 1.0 - (Math.abs(angle - Math.PI) / (EYE_CONE_ANGLE / 2.0)));
+    double bottomEye =
+        Math.max(0, 1.0 - (Math.abs(angle - (3.0 * Math.PI / 2.0)) / (EYE_CONE_ANGLE / 2.0)));
+
+    rightEye *= distanceSigmoid;
+    topEye *= distanceSigmoid;
+    leftEye *= distanceSigmoid;
+    bottomEye *= distanceSigmoid;
+
+    // Next two correspond to same and other nodes. One spikes if the closest node
+    // is of the same type, and the other spikes is the approacher is different
+    double same = sameType ? distanceSigmoid : 0.0;
+    double different = !sameType ? distanceSigmoid : 0.0;
+
+    inputs[base] = rightWall;
+    inputs[base + 1] = topWall;
+    inputs[base + 2] = leftWall;
+    inputs[base + 3] = bottomWall;
+    inputs[base + 4] = rightEye;
+    inputs[base + 5] = topEye;
+    inputs[base + 6] = leftEye;
+    inputs[base + 7] = bottomEye;
+    inputs[base + 8] = same;
+    inputs[base + 9] = different;
+  }
+}
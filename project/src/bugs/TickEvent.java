@@ -0,0 +1,67 @@
+package bugs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One tick of the simulation, recorded by Java Flight Recorder. The event's duration is the whole
+// tick, and the phase times show where it went. Filled in by BugController.
+@Name("neuralnodes.Tick")
+@Label("Tick")
+@Category("NeuralNodes")
+@StackTrace(false)
+@Description("One tick of the simulation, with the time spent in each phase")
+class TickEvent extends jdk.jfr.Event {
+  @Label("Round")
+  int round;
+
+  @Label("Bugs")
+  @Description("Bugs alive at the end of the tick")
+  int bugs;
+
+  @Label("Traditional Bugs")
+  int traditionalBugs;
+
+  @Label("Killer Bugs")
+  int killerBugs;
+
+  @Label("Births")
+  int births;
+
+  @Label("Deaths")
+  int deaths;
+
+  @Label("Sense")
+  @Timespan
+  long senseTime;
+
+  @Label("Inference")
+  @Timespan
+  long inferenceTime;
+
+  @Label("Move")
+  @Timespan
+  long moveTime;
+
+  @Label("Remove Dead")
+  @Description("Finding and removing dead bugs, and recomputing reproduction scores")
+  @Timespan
+  long removeDeadTime;
+
+  @Label("Births Time")
+  @Description("Picking parents, building genomes and placing newborns")
+  @Timespan
+  long birthsTime;
+
+  @Label("Index Rebuild")
+  @Timespan
+  long indexTime;
+
+  @Label("Publish")
+  @Description("Filling and submitting a frame, if anyone is subscribed")
+  @Timespan
+  long publishTime;
+}
@@ -80,6 +80,25 @@ public class AdjustmentsPanel extends JPanel {
     sheepReproductionPanel.add(sheepReproductionLabel2);
     addToGrid(sheepReproductionPanel, 0, ++row, 2);
 
+    // -- Births per tick --
+    JPanel birthsPanel = new JPanel();
+    JLabel birthsLabel1 = new JLabel("Each kind has");
+    birthsPanel.add(birthsLabel1);
+
+    JSpinner birthsSpinner =
+        makeIntegerSpinner(GameStates.BIRTHS_PER_TICK, GameStates.BIRTHS_PER_TICK_OPTIONS, 2);
+    birthsPanel.add(birthsSpinner);
+
+    JLabel birthsLabel2 = new JLabel("births per tick");
+    birthsPanel.add(birthsLabel2);
+    addToGrid(birthsPanel, 0, ++row, 2);
+
+    // -- Children born near parents --
+    JCheckBox childrenNearParents =
+        ComponentTiedToOption.checkBoxTiedToBoolean(
+            "Children are born near a parent", GameStates.CHILDREN_BORN_NEAR_PARENTS);
+    addToGrid(childrenNearParents, 0, ++row, 2);
+
     // -- Bug radius --
     JPanel bugRadiusPanel = new JPanel();
     JLabel bugRadiusLabel = new JLabel("Size:");
@@ -7,27 +7,27 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import javax.swing.JPanel;
-import bugs.Bug;
+import javax.swing.SwingUtilities;
 import bugs.BugController.TickCompletedMessage;
+import bugs.BugFrame;
 import bugs.BugType;
 import bugs.GameStates;
-import utils.Pair;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import utils.Sizes;
 import utils.Vector2d;
 
 public class MainDrawPanel extends JPanel {
   private static final long serialVersionUID = 0;
-  private TickCompletedMessage nextMessage_;
+  private volatile TickCompletedMessage nextMessage_;
   private long currMillis_;
   private double rollingFPS_ = 60.0;
   // TODO: Allow picking of which bug's net is shown using the mouse
   //  private Point mousePosition_ = null;
 
   private static final NumberFormat FORMATTER = new DecimalFormat("#0.0");
+  private static final LatencyHistogram RENDER_TIMES = Metrics.histogram("frame_render");
 
   public MainDrawPanel() {
     currMillis_ = System.currentTimeMillis();
@@ -65,14 +65,22 @@ public class MainDrawPanel extends JPanel {
   //    }
   //  }
 
+  // Takes over the message's frame, and releases it once a newer message has replaced it
   public void repaint(TickCompletedMessage message) {
     // In case a repaint is currently happening, do not overwrite the state it is currently using
+    TickCompletedMessage previousMessage = nextMessage_;
     nextMessage_ = message;
+    if (previousMessage != null) {
+      // Painting happens on the event dispatch thread, so once this runs no paint can still be
+      // reading the previous frame
+      SwingUtilities.invokeLater(() -> previousMessage.frame.release());
+    }
     super.repaint();
   }
 
   @Override
   public void paintComponent(Graphics g) {
+    long renderStart = RENDER_TIMES.start();
     TickCompletedMessage currMessage = nextMessage_;
     
     long millis = System.currentTimeMillis();
@@ -101,17 +109,16 @@ public class MainDrawPanel extends JPanel {
     int traditionalCount = 0;
     int killerCount = 0;
     if (currMessage != null) {
-      drawBugs(graphics, currMessage.bugList, scale);
-      drawMatings(graphics, currMessage.matings, scale);
-
-      if (currMessage.bugList != null) {
-        for (Bug bug : currMessage.bugList) {
-          if (bug.getBugType() == BugType.TRADITIONAL) {
-            traditionalCount += 1;
-          }
-          if (bug.getBugType() == BugType.KILLER) {
-            killerCount += 1;
-          }
+      BugFrame frame = currMessage.frame;
+      drawBugs(graphics, frame, scale);
+      drawMatings(graphics, frame, scale);
+
+      for (int bug = 0; bug < frame.size(); bug++) {
+        if (frame.getBugType(bug) == BugType.TRADITIONAL) {
+          traditionalCount += 1;
+        }
+        if (frame.getBugType(bug) == BugType.KILLER) {
+          killerCount += 1;
         }
       }
     }
@@ -122,27 +129,25 @@ public class MainDrawPanel extends JPanel {
     graphics.drawString("FPS: " + FORMATTER.format(rollingFPS_), 5 + border, 15 + border);
     graphics.drawString("Sheep: " + traditionalCount, 70 + border, 15 + border);
     graphics.drawString("Wolves: " + killerCount, 150 + border, 15 + border);
+    RENDER_TIMES.stop(renderStart);
   }
   
-  private static void drawBugs(Graphics2D graphics, List<Bug> bugList, double scale) {
-    if (bugList == null) {
-      return;
-    }
-    
-    Map<BugType, Double> maxReproductionScorePerBugType = new HashMap<>();
-    for (Bug bug : bugList) {
-      maxReproductionScorePerBugType.compute(
-          bug.getBugType(),
-          (k, v) ->
-              v == null ? bug.getReproductionScore() : Math.max(v, bug.getReproductionScore()));
+  private static void drawBugs(Graphics2D graphics, BugFrame frame, double scale) {
+    double[] maxReproductionScorePerBugType = new double[BugType.values().length];
+    for (int bug = 0; bug < frame.size(); bug++) {
+      int type = frame.getBugType(bug).ordinal();
+      maxReproductionScorePerBugType[type] =
+          Math.max(maxReproductionScorePerBugType[type], frame.getReproductionScore(bug));
     }
 
-    for (Bug bug : bugList) {
+    for (int bug = 0; bug < frame.size(); bug++) {
       // Draw a ring around reproducers
-      double reproductionScore = bug.getReproductionScore();
+      double reproductionScore = frame.getReproductionScore(bug);
       if (reproductionScore > 0.) {
         float ringPercent =
-            (float) (reproductionScore / maxReproductionScorePerBugType.get(bug.getBugType()));
+            (float)
+                (reproductionScore
+                    / maxReproductionScorePerBugType[frame.getBugType(bug).ordinal()]);
         // 0% -> RED (1, 0, 0), 50% -> YELLOW (1, 1, 0), 100% GREEN (0, 1, 0)
         // red is 1 from 0% -> 50%, then 1 -> 0 from 50% -> 100%
         float ringRed = Math.min(1.f, 2.f * (1.f - ringPercent));
@@ -150,42 +155,45 @@ public class MainDrawPanel extends JPanel {
         float ringGreen = Math.min(1.f, 2.f * ringPercent);
         graphics.setColor(new Color(ringRed, ringGreen, 0.f));
 
-        drawBug(graphics, bug, scale, GameStates.getBugRadius() + 3.0);
+        drawBug(graphics, frame, bug, scale, GameStates.getBugRadius() + 3.0);
         graphics.setColor(Color.BLACK);
-        drawBug(graphics, bug, scale, GameStates.getBugRadius() + 2.0);
+        drawBug(graphics, frame, bug, scale, GameStates.getBugRadius() + 2.0);
       }
 
-      graphics.setColor(bug.getColor());
-      drawBug(graphics, bug, scale, GameStates.getBugRadius());
+      graphics.setColor(new Color(frame.getColor(bug)));
+      drawBug(graphics, frame, bug, scale, GameStates.getBugRadius());
 
-      if (bug.getBugType() == BugType.KILLER) {
+      if (frame.getBugType(bug) == BugType.KILLER) {
         graphics.setColor(Color.BLACK);
-        drawBug(graphics, bug, scale, GameStates.getBugRadius() - 2.0);
+        drawBug(graphics, frame, bug, scale, GameStates.getBugRadius() - 2.0);
       }
     }
   }
 
-  private static void drawBug(Graphics2D graphics, Bug bug, double scale, double size) {
+  private static void drawBug(
+      Graphics2D graphics, BugFrame frame, int bug, double scale, double size) {
     int border = Sizes.getBorder();
     graphics.fillOval(
-        (int) ((bug.getPosition().getX() - size) * scale) + border,
-        (int) ((bug.getPosition().getY() - size) * scale) + border,
+        (int) ((frame.getX(bug) - size) * scale) + border,
+        (int) ((frame.getY(bug) - size) * scale) + border,
         (int) (size * 2.0 * scale),
         (int) (size * 2.0 * scale));
   }
 
-  private static void drawMatings(Graphics2D graphics, List<Pair<Bug, Bug>> matings, double scale) {
-    if (matings == null || !DisplayOptions.shouldShowMatings()) {
+  private static void drawMatings(Graphics2D graphics, BugFrame frame, double scale) {
+    if (!DisplayOptions.shouldShowMatings()) {
       return;
     }
 
     graphics.setColor(Color.YELLOW);
-    for (Pair<Bug, Bug> mating : matings) {
+    for (int mating = 0; mating < frame.getNumMatings(); mating++) {
+      int parent1 = frame.getMatingParent1(mating);
+      int parent2 = frame.getMatingParent2(mating);
       graphics.drawLine(
-          (int) (mating.first.getPosition().getX() * scale),
-          (int) (mating.first.getPosition().getY() * scale),
-          (int) (mating.second.getPosition().getX() * scale),
-          (int) (mating.second.getPosition().getY() * scale));
+          (int) (frame.getX(parent1) * scale),
+          (int) (frame.getY(parent1) * scale),
+          (int) (frame.getX(parent2) * scale),
+          (int) (frame.getY(parent2) * scale));
     }
   }
 }
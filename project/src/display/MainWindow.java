@@ -11,6 +11,7 @@ import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.WindowConstants;
 import bugs.BugController;
+import bugs.BugFrame;
 import bugs.BugController.TickCompletedMessage;
 import utils.Sizes;
 
@@ -80,6 +81,8 @@ public class MainWindow {
         .subscribe(
             new Subscriber<TickCompletedMessage>() {
               private Subscription subscription_;
+              // The bug whose net is shown, followed from frame to frame for as long as it lives
+              private long shownHandle_ = -1;
 
               @Override
               public void onSubscribe(Subscription subscription) {
@@ -89,9 +92,18 @@ public class MainWindow {
 
               @Override
               public void onNext(TickCompletedMessage message) {
-                mainDrawPanel_.repaint(message);
                 // TODO: Allow user to hover and click-select but they want to view
-                netDrawPanel_.repaint(message.bugList.get(0).getNeuralNet());
+                BugFrame frame = message.frame;
+                int shown = frame.indexOf(shownHandle_);
+                if (shown < 0 && frame.size() > 0) {
+                  shown = findOldestBug(frame);
+                  shownHandle_ = frame.getHandle(shown);
+                }
+                if (shown >= 0) {
+                  netDrawPanel_.repaint(frame.getNeuralNet(shown));
+                }
+                // The draw panel releases the frame once it is done with it
+                mainDrawPanel_.repaint(message);
                 subscription_.request(1);
               }
 
@@ -104,4 +116,14 @@ public class MainWindow {
               public void onComplete() {}
             });
   }
+
+  private static int findOldestBug(BugFrame frame) {
+    int oldest = 0;
+    for (int bug = 1; bug < frame.size(); bug++) {
+      if (frame.getId(bug) < frame.getId(oldest)) {
+        oldest = bug;
+      }
+    }
+    return oldest;
+  }
 }
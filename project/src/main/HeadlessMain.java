@@ -0,0 +1,69 @@
+package main;
+
+import bugs.BugController;
+import bugs.BugType;
+import bugs.EngineOptions;
+import bugs.GameStates;
+import java.io.IOException;
+import metrics.Metrics;
+
+// Runs the simulation without a window, as fast as the hardware allows. Nothing here touches AWT,
+// so this can run on machines without a display.
+//
+// Usage: HeadlessMain [width height [ticks [millisPerTick]]]
+//   ticks         number of ticks to run before exiting, or 0 to run forever
+//   millisPerTick simulated time per tick. Defaults to the 60 ticks per second of the window.
+//
+// Ticks have a fixed length, so two runs with the same -Dneuralnodes.seed are identical. With
+// -Dneuralnodes.checkpointFile set, the world is also saved there when the run ends, and can be
+// picked up again with -Dneuralnodes.resumeFrom.
+public class HeadlessMain {
+  private static final int DEFAULT_WIDTH = 1200;
+  private static final int DEFAULT_HEIGHT = 1000;
+  private static final long DEFAULT_MILLIS_PER_TICK = 1000 / 60;
+  private static final int REPORT_INTERVAL = 1000;
+
+  public static void main(String[] args) throws IOException {
+    int width = args.length >= 2 ? Integer.parseInt(args[0]) : DEFAULT_WIDTH;
+    int height = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_HEIGHT;
+    long ticks = args.length >= 3 ? Long.parseLong(args[2]) : 0;
+    long millisPerTick = args.length >= 4 ? Long.parseLong(args[3]) : DEFAULT_MILLIS_PER_TICK;
+
+    Metrics.setEnabled(EngineOptions.getMetricsEnabled());
+    Metrics.export(EngineOptions.getMetricsPort());
+    GameStates.initialize();
+    BugController bugController = BugController.create(width, height);
+    if (EngineOptions.getResumeFile() == null) {
+      System.out.println("Seed " + EngineOptions.getSeed());
+    }
+
+    long startNanos = System.nanoTime();
+    long reportNanos = startNanos;
+    long reportTick = 0;
+    for (long tick = 1; ticks <= 0 || tick <= ticks; tick++) {
+      bugController.tick(millisPerTick);
+
+      if (tick % REPORT_INTERVAL == 0 || tick == ticks) {
+        long nanos = System.nanoTime();
+        double ticksPerSecond = (tick - reportTick) / ((nanos - reportNanos) / 1e9);
+        reportNanos = nanos;
+        reportTick = tick;
+        System.out.println(
+            String.format(
+                "tick %d: %d traditional, %d killer, %.1f ticks/s",
+                tick,
+                bugController.getBugCount(BugType.TRADITIONAL),
+                bugController.getBugCount(BugType.KILLER),
+                ticksPerSecond));
+      }
+    }
+
+    System.out.println(
+        String.format(
+            "Ran %d ticks in %.1f s", ticks, (System.nanoTime() - startNanos) / 1e9));
+    if (EngineOptions.getCheckpointFile() != null) {
+      bugController.saveCheckpoint(EngineOptions.getCheckpointFile()).join();
+    }
+    Metrics.stopEndpoint();
+  }
+}
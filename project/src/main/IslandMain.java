@@ -0,0 +1,74 @@
+package main;
+
+import bugs.BugController;
+import bugs.BugType;
+import bugs.EngineOptions;
+import bugs.GameStates;
+import bugs.IslandModel;
+import metrics.Metrics;
+
+// Runs several worlds side by side without a window, migrating the best bugs between them (see
+// IslandModel). Like HeadlessMain, two runs with the same -Dneuralnodes.seed are identical.
+//
+// Usage: IslandMain [islands [width height [ticks [millisPerTick]]]]
+//   islands       number of worlds. Defaults to one per processor.
+//   ticks         number of ticks to run before exiting, or 0 to run forever
+//   millisPerTick simulated time per tick. Defaults to the 60 ticks per second of the window.
+//
+// -Dneuralnodes.migrationInterval and -Dneuralnodes.migrantsPerType control migration.
+public class IslandMain {
+  private static final int DEFAULT_WIDTH = 1200;
+  private static final int DEFAULT_HEIGHT = 1000;
+  private static final long DEFAULT_MILLIS_PER_TICK = 1000 / 60;
+  private static final int REPORT_INTERVAL = 1000;
+
+  public static void main(String[] args) {
+    int numIslands =
+        args.length >= 1
+            ? Integer.parseInt(args[0])
+            : Runtime.getRuntime().availableProcessors();
+    int width = args.length >= 3 ? Integer.parseInt(args[1]) : DEFAULT_WIDTH;
+    int height = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_HEIGHT;
+    long ticks = args.length >= 4 ? Long.parseLong(args[3]) : 0;
+    long millisPerTick = args.length >= 5 ? Long.parseLong(args[4]) : DEFAULT_MILLIS_PER_TICK;
+
+    Metrics.setEnabled(EngineOptions.getMetricsEnabled());
+    Metrics.export(EngineOptions.getMetricsPort());
+    GameStates.initialize();
+    IslandModel islands = new IslandModel(numIslands, width, height);
+    System.out.println("Seed " + EngineOptions.getSeed() + ", " + numIslands + " islands");
+
+    long startNanos = System.nanoTime();
+    long reportNanos = startNanos;
+    long reportTick = 0;
+    for (long tick = 1; ticks <= 0 || tick <= ticks; tick++) {
+      islands.tick(millisPerTick);
+
+      if (tick % REPORT_INTERVAL == 0 || tick == ticks) {
+        long nanos = System.nanoTime();
+        // Island ticks, across all islands
+        double ticksPerSecond =
+            (tick - reportTick) * numIslands / ((nanos - reportNanos) / 1e9);
+        reportNanos = nanos;
+        reportTick = tick;
+        StringBuilder line = new StringBuilder("tick " + tick + ":");
+        for (int i = 0; i < numIslands; i++) {
+          BugController island = islands.getIsland(i);
+          line.append(
+              String.format(
+                  " [%d/%d]",
+                  island.getBugCount(BugType.TRADITIONAL),
+                  island.getBugCount(BugType.KILLER)));
+        }
+        line.append(String.format(", %.1f ticks/s", ticksPerSecond));
+        System.out.println(line);
+      }
+    }
+
+    System.out.println(
+        String.format(
+            "Ran %d ticks in %.1f s", ticks, (System.nanoTime() - startNanos) / 1e9));
+    islands.shutdown();
+    Metrics.stopEndpoint();
+  }
+}
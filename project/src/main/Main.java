@@ -1,17 +1,21 @@
 package main;
 
 import bugs.BugController;
+import bugs.EngineOptions;
 import bugs.GameStates;
 import display.MainWindow;
-import utils.ConcurrentTimers;
+import metrics.Metrics;
 import utils.Sizes;
 
 public class Main {
   public static void main(String[] args) throws Exception {
     Sizes.initialize();
-    ConcurrentTimers.initialize();
+    Metrics.setEnabled(EngineOptions.getMetricsEnabled());
+    Metrics.export(EngineOptions.getMetricsPort());
     GameStates.initialize();
-    BugController bugController = new BugController();
+    BugController bugController =
+        BugController.create(Sizes.getBoardWidth(), Sizes.getBoardHeight());
     new MainWindow(bugController);
+    bugController.start();
   }
 }
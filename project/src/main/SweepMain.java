@@ -0,0 +1,113 @@
+package main;
+
+import bugs.EngineOptions;
+import bugs.GameStates;
+import bugs.ParameterSweep;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Runs a parameter sweep without a window (see ParameterSweep), e.g.
+//   SweepMain sweep.csv 20000 8 bug_radius=5,7,10 killer_starvation_seconds=10-30
+//
+// Usage: SweepMain results ticks runsPerSetting [option=value ...] [parameter=values ...]
+//   results        CSV file to write a line to as each run finishes
+//   ticks          length of every run
+//   runsPerSetting worlds to run with each setting, each from its own seed
+// Options:
+//   samples=N      try N settings picked at random from the values, rather than every combination
+//   threads=N      worlds to run at once. Defaults to one per processor.
+//   width=W, height=H
+// Parameter values are a comma separated list, an inclusive range such as 5-30, or * for every
+// value the parameter can take. Parameters not named keep their usual values.
+//
+// Runs are seeded from -Dneuralnodes.seed, as are the random samples, so sweeps can be repeated.
+public class SweepMain {
+  private static final int DEFAULT_WIDTH = 1200;
+  private static final int DEFAULT_HEIGHT = 1000;
+  private static final long MILLIS_PER_TICK = 1000 / 60;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println(
+          "Usage: SweepMain results ticks runsPerSetting [option=value ...] "
+              + "[parameter=values ...]");
+      System.err.println("Parameters: " + ParameterSweep.getParameterNames());
+      System.exit(1);
+    }
+    Path results = Paths.get(args[0]);
+    long ticks = Long.parseLong(args[1]);
+    int runsPerSetting = Integer.parseInt(args[2]);
+    int samples = 0;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int width = DEFAULT_WIDTH;
+    int height = DEFAULT_HEIGHT;
+    Map<String, List<Integer>> values = new LinkedHashMap<>();
+    for (int i = 3; i < args.length; i++) {
+      int equals = args[i].indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Expected name=value, got " + args[i]);
+      }
+      String name = args[i].substring(0, equals);
+      String value = args[i].substring(equals + 1);
+      switch (name) {
+        case "samples":
+          samples = Integer.parseInt(value);
+          break;
+        case "threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "width":
+          width = Integer.parseInt(value);
+          break;
+        case "height":
+          height = Integer.parseInt(value);
+          break;
+        default:
+          values.put(name, parseValues(name, value));
+      }
+    }
+
+    GameStates.initialize();
+    long seed = EngineOptions.getSeed();
+    List<Map<String, Integer>> settings =
+        samples > 0 ? ParameterSweep.sample(values, samples, seed) : ParameterSweep.grid(values);
+    System.out.println(
+        String.format(
+            "Seed %d, %d settings, %d runs each, %d at a time",
+            seed, settings.size(), runsPerSetting, threads));
+
+    long startNanos = System.nanoTime();
+    new ParameterSweep(width, height, ticks, MILLIS_PER_TICK, runsPerSetting, threads, seed)
+        .run(settings, results);
+    System.out.println(
+        String.format(
+            "Ran %d worlds in %.1f s",
+            settings.size() * runsPerSetting, (System.nanoTime() - startNanos) / 1e9));
+  }
+
+  private static List<Integer> parseValues(String name, String text) {
+    List<Integer> options = ParameterSweep.getOptions(name);
+    if (text.equals("*")) {
+      return options;
+    }
+    List<Integer> values = new ArrayList<>();
+    for (String part : text.split(",")) {
+      int dash = part.indexOf('-', 1);
+      if (dash < 0) {
+        values.add(Integer.parseInt(part.trim()));
+        continue;
+      }
+      int low = Integer.parseInt(part.substring(0, dash).trim());
+      int high = Integer.parseInt(part.substring(dash + 1).trim());
+      for (int value = low; value <= high; value++) {
+        values.add(value);
+      }
+    }
+    return values;
+  }
+}
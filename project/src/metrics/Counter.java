@@ -0,0 +1,36 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// A count that only goes up, e.g. births. Threads add to their own stripe of a LongAdder, so
+// counting from many threads at once does not contend. Counts nothing while metrics are off.
+public class Counter implements CounterMXBean {
+  private final String name_;
+  private final LongAdder count_ = new LongAdder();
+
+  // Use Metrics.counter() to make one
+  Counter(String name) {
+    name_ = name;
+  }
+
+  public String getName() {
+    return name_;
+  }
+
+  public void increment() {
+    if (Metrics.isEnabled()) {
+      count_.increment();
+    }
+  }
+
+  public void add(long amount) {
+    if (Metrics.isEnabled()) {
+      count_.add(amount);
+    }
+  }
+
+  @Override
+  public long getValue() {
+    return count_.sum();
+  }
+}
@@ -0,0 +1,6 @@
+package metrics;
+
+// How a Counter appears over JMX
+public interface CounterMXBean {
+  long getValue();
+}
@@ -0,0 +1,139 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Distribution of how long something takes, in nanoseconds. Like an HDR histogram, values are
+// counted in buckets whose width grows with the value: every power of two is split into
+// SUB_BUCKETS equal buckets, so any recorded value is known to within 1 / SUB_BUCKETS of itself
+// while the whole range of a long fits in a few hundred buckets. Each bucket is a LongAdder, so
+// recording from many threads at once does not contend.
+//
+// Typical use:
+//   long start = histogram.start();
+//   ...
+//   histogram.stop(start);
+//
+// While metrics are off, start() and stop() cost one volatile read and record nothing.
+public class LatencyHistogram implements LatencyHistogramMXBean {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Enough buckets for Long.MAX_VALUE
+  private static final int NUM_BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+  private final String name_;
+  private final LongAdder[] buckets_ = new LongAdder[NUM_BUCKETS];
+  private final LongAdder count_ = new LongAdder();
+  private final LongAdder sum_ = new LongAdder();
+  private final LongAccumulator max_ = new LongAccumulator(Math::max, 0);
+
+  // Use Metrics.histogram() to make one
+  LatencyHistogram(String name) {
+    name_ = name;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets_[i] = new LongAdder();
+    }
+  }
+
+  public String getName() {
+    return name_;
+  }
+
+  // Values below SUB_BUCKETS get a bucket each. Above that, the bucket is picked by the position
+  // of the highest set bit and the SUB_BUCKET_BITS bits below it.
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  // Largest value that falls in the bucket
+  private static long highestValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+    long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+    return lowest + ((1L << shift) - 1);
+  }
+
+  // The time to pass to stop(), or 0 if metrics are off
+  public long start() {
+    return Metrics.isEnabled() ? System.nanoTime() : 0;
+  }
+
+  // Records the time since start(). Does nothing if metrics were off when start() was called, or
+  // are off now.
+  public void stop(long start) {
+    if (start != 0 && Metrics.isEnabled()) {
+      record(System.nanoTime() - start);
+    }
+  }
+
+  public void record(long nanos) {
+    if (!Metrics.isEnabled()) {
+      return;
+    }
+    nanos = Math.max(0, nanos);
+    buckets_[bucketOf(nanos)].increment();
+    count_.increment();
+    sum_.add(nanos);
+    max_.accumulate(nanos);
+  }
+
+  @Override
+  public long getCount() {
+    return count_.sum();
+  }
+
+  public long getSumNanos() {
+    return sum_.sum();
+  }
+
+  @Override
+  public double getMeanNanos() {
+    long count = getCount();
+    return count == 0 ? 0.0 : (double) getSumNanos() / count;
+  }
+
+  @Override
+  public long getMaxNanos() {
+    return max_.get();
+  }
+
+  @Override
+  public long getMedianNanos() {
+    return getValueAtPercentile(50.0);
+  }
+
+  @Override
+  public long get99thPercentileNanos() {
+    return getValueAtPercentile(99.0);
+  }
+
+  // Smallest bucket bound that at least the given percent of values are at or below. Values can be
+  // recorded while this runs, in which case the answer mixes counts from before and after them.
+  public long getValueAtPercentile(double percentile) {
+    long[] counts = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = buckets_[i].sum();
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil((percentile / 100.0) * total));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(highestValueIn(i), getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+}
@@ -0,0 +1,14 @@
+package metrics;
+
+// How a LatencyHistogram appears over JMX. All times are in nanoseconds.
+public interface LatencyHistogramMXBean {
+  long getCount();
+
+  double getMeanNanos();
+
+  long getMedianNanos();
+
+  long get99thPercentileNanos();
+
+  long getMaxNanos();
+}
@@ -0,0 +1,145 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Registry of every counter and latency histogram in the program. Handles are registered once,
+// usually into static fields of the class that updates them, so updating one is a field access
+// rather than a lookup by name.
+//
+// Everything is off until setEnabled(true). While off, updates cost a single volatile read. Metrics
+// can be turned on and off at any time, from code, over JMX, or with -Dneuralnodes.metrics=true.
+//
+// Names should be lower_snake_case, as they are used as-is by the text endpoint.
+public class Metrics {
+  private static final String JMX_DOMAIN = "neuralnodes";
+
+  private static volatile boolean enabled_ = false;
+
+  private static final Map<String, Counter> counters_ = new ConcurrentHashMap<>();
+  private static final Map<String, LatencyHistogram> histograms_ = new ConcurrentHashMap<>();
+  // Set once export() has been called, after which new metrics are registered with it as well
+  private static volatile MBeanServer mBeanServer_;
+
+  public static boolean isEnabled() {
+    return enabled_;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    enabled_ = enabled;
+  }
+
+  // The counter with this name, registering it the first time
+  public static Counter counter(String name) {
+    Counter counter = counters_.computeIfAbsent(name, Counter::new);
+    registerMBean("Counter", name, counter);
+    return counter;
+  }
+
+  // The histogram with this name, registering it the first time
+  public static LatencyHistogram histogram(String name) {
+    LatencyHistogram histogram = histograms_.computeIfAbsent(name, LatencyHistogram::new);
+    registerMBean("Histogram", name, histogram);
+    return histogram;
+  }
+
+  // Registers every metric, and a switch to turn them on and off, as JMX MBeans under the
+  // "neuralnodes" domain. If port is above 0, also serves them as text on localhost (see
+  // MetricsEndpoint).
+  public static synchronized void export(int port) {
+    if (mBeanServer_ == null) {
+      mBeanServer_ = ManagementFactory.getPlatformMBeanServer();
+      registerMBean("Metrics", "switch", new Switch());
+      for (Counter counter : counters_.values()) {
+        registerMBean("Counter", counter.getName(), counter);
+      }
+      for (LatencyHistogram histogram : histograms_.values()) {
+        registerMBean("Histogram", histogram.getName(), histogram);
+      }
+    }
+    if (port > 0) {
+      MetricsEndpoint.start(port);
+    }
+  }
+
+  // Stops serving metrics as text, if export() started to
+  public static void stopEndpoint() {
+    MetricsEndpoint.stop();
+  }
+
+  private static void registerMBean(String type, String name, Object mBean) {
+    MBeanServer server = mBeanServer_;
+    if (server == null) {
+      return;
+    }
+    try {
+      ObjectName objectName =
+          new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(mBean, objectName);
+      }
+    } catch (JMException e) {
+      System.err.println("Could not register " + name + " with JMX: " + e);
+    }
+  }
+
+  // Every metric, one value per line in the Prometheus text format. Histograms are summaries in
+  // seconds.
+  public static String toText() {
+    StringBuilder text = new StringBuilder();
+    text.append("# TYPE neuralnodes_metrics_enabled gauge\n");
+    text.append("neuralnodes_metrics_enabled ").append(enabled_ ? 1 : 0).append('\n');
+
+    for (Counter counter : sortedByName(counters_)) {
+      String name = "neuralnodes_" + counter.getName() + "_total";
+      text.append("# TYPE ").append(name).append(" counter\n");
+      text.append(name).append(' ').append(counter.getValue()).append('\n');
+    }
+
+    for (LatencyHistogram histogram : sortedByName(histograms_)) {
+      String name = "neuralnodes_" + histogram.getName() + "_seconds";
+      text.append("# TYPE ").append(name).append(" summary\n");
+      for (double quantile : new double[] {0.5, 0.9, 0.99}) {
+        text.append(name)
+            .append("{quantile=\"")
+            .append(quantile)
+            .append("\"} ")
+            .append(seconds(histogram.getValueAtPercentile(quantile * 100.0)))
+            .append('\n');
+      }
+      text.append(name).append("_max ").append(seconds(histogram.getMaxNanos())).append('\n');
+      text.append(name).append("_sum ").append(seconds(histogram.getSumNanos())).append('\n');
+      text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+    return text.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+  }
+
+  private static <T> List<T> sortedByName(Map<String, T> metrics) {
+    List<T> sorted = new ArrayList<>();
+    metrics.keySet().stream().sorted().forEach(name -> sorted.add(metrics.get(name)));
+    return sorted;
+  }
+
+  private static class Switch implements MetricsMXBean {
+    @Override
+    public boolean isEnabled() {
+      return Metrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+      Metrics.setEnabled(enabled);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+// Serves Metrics.toText() at http://localhost:<port>/metrics for dashboards to scrape. Only
+// listens on the loopback address.
+class MetricsEndpoint {
+  private static HttpServer server_;
+
+  // The server's dispatcher thread keeps the program alive, so anything that exits by returning
+  // from main must call stop() first
+  static synchronized void start(int port) {
+    if (server_ != null) {
+      return;
+    }
+    try {
+      HttpServer server =
+          HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+      server.createContext("/metrics", MetricsEndpoint::handle);
+      // Scrapes are handled one at a time, off the tick threads
+      server.setExecutor(
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+              }));
+      server.start();
+      server_ = server;
+      System.out.println("Serving metrics at http://localhost:" + port + "/metrics");
+    } catch (IOException e) {
+      System.err.println("Could not serve metrics on port " + port + ": " + e);
+    }
+  }
+
+  static synchronized void stop() {
+    if (server_ != null) {
+      server_.stop(0);
+      server_ = null;
+    }
+  }
+
+  private static void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body = Metrics.toText().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+}
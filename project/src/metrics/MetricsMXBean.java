@@ -0,0 +1,8 @@
+package metrics;
+
+// Turns all metrics on or off over JMX, e.g. from jconsole
+public interface MetricsMXBean {
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+}
@@ -0,0 +1,231 @@
+package utils;
+
+import java.util.Arrays;
+
+// A uniform grid over tagged 2d points that is updated in place rather than rebuilt. Each point
+// has a caller-chosen id which stays the same while it moves, and each cell keeps a linked list of
+// the ids in it, so moving a point within its cell only overwrites its coordinates, and moving it
+// to another cell relinks it. The cost of keeping the grid up to date therefore depends on how much
+// changes between updates, not on how many points there are.
+//
+// The cells only need to be laid out again when the number of points has changed enough that the
+// cell size no longer suits it (see rebalance()).
+//
+// Not thread safe while it is being changed, but any number of threads may query it at once
+// otherwise.
+public class IncrementalGrid2d implements SpatialIndex {
+  // Points this close together are considered to be the same point
+  private static final double SAME_LOCATION_SQUARED = 0.00000001;
+  // Keeps sparse point sets from using huge, mostly empty grids
+  private static final int MAX_CELLS_PER_POINT = 4;
+  private static final int NONE = -1;
+
+  private final double width_;
+  private final double height_;
+  private final double minCellSize_;
+
+  // -- Cells --
+  private double cellSize_;
+  private int columns_;
+  private int rows_;
+  // First id in each cell, or NONE
+  private int[] heads_;
+
+  // -- Points, by id --
+  private int size_;
+  private double[] xs_ = new double[0];
+  private double[] ys_ = new double[0];
+  private int[] tags_ = new int[0];
+  // Handed back by queries as the point's index
+  private int[] indices_ = new int[0];
+  // Cell of each id, or NONE if the id is not in the grid
+  private int[] cells_ = new int[0];
+  private int[] next_ = new int[0];
+  private int[] previous_ = new int[0];
+
+  // Covers a board of the given size. Cells are never smaller than minCellSize, which should be
+  // around the typical distance between neighbors.
+  public IncrementalGrid2d(double width, double height, double minCellSize) {
+    assert minCellSize > 0 : "Cell size must be positive";
+    width_ = width;
+    height_ = height;
+    minCellSize_ = minCellSize;
+    layOutCells(minCellSize);
+  }
+
+  public double getMinCellSize() {
+    return minCellSize_;
+  }
+
+  private void layOutCells(double cellSize) {
+    cellSize_ = cellSize;
+    columns_ = (int) (width_ / cellSize) + 1;
+    rows_ = (int) (height_ / cellSize) + 1;
+    heads_ = new int[columns_ * rows_];
+    Arrays.fill(heads_, NONE);
+  }
+
+  // Cell size that a grid built from scratch would use for the current number of points
+  private double getIdealCellSize() {
+    double cellSize = minCellSize_;
+    long maxCells = ((long) MAX_CELLS_PER_POINT * size_) + 1;
+    while ((((long) (width_ / cellSize) + 1) * ((long) (height_ / cellSize) + 1)) > maxCells) {
+      cellSize *= 2.0;
+    }
+    return cellSize;
+  }
+
+  private void ensureCapacity(int id) {
+    if (id < cells_.length) {
+      return;
+    }
+    int capacity = Math.max(id + 1, cells_.length * 2);
+    int oldCapacity = cells_.length;
+    xs_ = Arrays.copyOf(xs_, capacity);
+    ys_ = Arrays.copyOf(ys_, capacity);
+    tags_ = Arrays.copyOf(tags_, capacity);
+    indices_ = Arrays.copyOf(indices_, capacity);
+    cells_ = Arrays.copyOf(cells_, capacity);
+    next_ = Arrays.copyOf(next_, capacity);
+    previous_ = Arrays.copyOf(previous_, capacity);
+    Arrays.fill(cells_, oldCapacity, capacity, NONE);
+  }
+
+  private int columnOf(double x) {
+    return Math.max(0, Math.min(columns_ - 1, (int) (x / cellSize_)));
+  }
+
+  private int rowOf(double y) {
+    return Math.max(0, Math.min(rows_ - 1, (int) (y / cellSize_)));
+  }
+
+  private int cellOf(double x, double y) {
+    return (rowOf(y) * columns_) + columnOf(x);
+  }
+
+  private void link(int id, int cell) {
+    cells_[id] = cell;
+    previous_[id] = NONE;
+    next_[id] = heads_[cell];
+    if (heads_[cell] != NONE) {
+      previous_[heads_[cell]] = id;
+    }
+    heads_[cell] = id;
+  }
+
+  private void unlink(int id) {
+    if (previous_[id] != NONE) {
+      next_[previous_[id]] = next_[id];
+    } else {
+      heads_[cells_[id]] = next_[id];
+    }
+    if (next_[id] != NONE) {
+      previous_[next_[id]] = previous_[id];
+    }
+    cells_[id] = NONE;
+  }
+
+  public boolean contains(int id) {
+    return id < cells_.length && cells_[id] != NONE;
+  }
+
+  // Adds the point with this id, or moves it if it is already in the grid
+  public void put(int id, int index, double x, double y, int tag) {
+    ensureCapacity(id);
+    xs_[id] = x;
+    ys_[id] = y;
+    tags_[id] = tag;
+    indices_[id] = index;
+    int cell = cellOf(x, y);
+    if (cells_[id] == cell) {
+      return;
+    }
+    if (cells_[id] == NONE) {
+      size_++;
+    } else {
+      unlink(id);
+    }
+    link(id, cell);
+  }
+
+  public void remove(int id) {
+    if (!contains(id)) {
+      return;
+    }
+    unlink(id);
+    size_--;
+  }
+
+  // Lays the cells out again if the number of points has drifted far enough from what they were
+  // laid out for that queries would suffer: either many more points share each cell, or queries
+  // would search through many empty cells. Returns whether it did.
+  public boolean rebalance() {
+    double idealCellSize = getIdealCellSize();
+    if (idealCellSize < cellSize_ * 4.0 && idealCellSize > cellSize_ / 4.0) {
+      return false;
+    }
+    layOutCells(idealCellSize);
+    for (int id = 0; id < cells_.length; id++) {
+      if (cells_[id] != NONE) {
+        link(id, cellOf(xs_[id], ys_[id]));
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return size_;
+  }
+
+  @Override
+  public boolean findNearest(double x, double y, boolean excludingSame, NearestResult result) {
+    result.clear();
+    if (size_ == 0) {
+      return false;
+    }
+    int column = columnOf(x);
+    int row = rowOf(y);
+
+    int closest = NONE;
+    double closestSquared = Double.POSITIVE_INFINITY;
+    int maxRing = Math.max(columns_, rows_);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // Every cell in this ring is at least (ring - 1) cells away from the query, so once the best
+      // point so far is closer than that nothing further out can beat it
+      double ringDistance = (ring - 1) * cellSize_;
+      if (ring > 0 && closestSquared <= ringDistance * ringDistance) {
+        break;
+      }
+
+      int minRow = Math.max(0, row - ring);
+      int maxRow = Math.min(rows_ - 1, row + ring);
+      for (int r = minRow; r <= maxRow; r++) {
+        boolean edgeRow = (r == row - ring) || (r == row + ring);
+        // Middle rows of the ring only have the two cells on its left and right edges
+        int columnStep = edgeRow ? 1 : Math.max(1, 2 * ring);
+        for (int c = column - ring; c <= column + ring; c += columnStep) {
+          if (c < 0 || c >= columns_) {
+            continue;
+          }
+          for (int id = heads_[(r * columns_) + c]; id != NONE; id = next_[id]) {
+            double dx = xs_[id] - x;
+            double dy = ys_[id] - y;
+            double squareDistance = (dx * dx) + (dy * dy);
+            if (squareDistance < closestSquared
+                && (!excludingSame || squareDistance > SAME_LOCATION_SQUARED)) {
+              closest = id;
+              closestSquared = squareDistance;
+            }
+          }
+        }
+      }
+    }
+
+    if (closest == NONE) {
+      return false;
+    }
+    result.set(indices_[closest], tags_[closest], xs_[closest], ys_[closest], closestSquared);
+    return true;
+  }
+}
@@ -1,224 +1,239 @@
 package utils;
 
-import java.util.LinkedList;
-
-public class KDTree2d<T> {
-  private class TreeNode {
-    private final int depth_;
-    private final Vector2d location_;
-    private final T data_;
-    private TreeNode lesser_;
-    private TreeNode greater_;
-
-    public TreeNode(int depth, Vector2d location, T data) {
-      depth_ = depth;
-      location_ = new Vector2d(location);
-      data_ = data;
-    }
-
-    public LocationAndData toLocationAndData() {
-      return new LocationAndData(location_, data_);
-    }
-
-    public int getDepth() {
-      return depth_;
-    }
-
-    public Vector2d getLocation() {
-      return new Vector2d(location_);
-    }
-
-    public void setLesser(TreeNode lesser) {
-      lesser_ = lesser;
-    }
-
-    public void setGreater(TreeNode greater) {
-      greater_ = greater;
-    }
-
-    public TreeNode getLesser() {
-      return lesser_;
-    }
-
-    public TreeNode getGreater() {
-      return greater_;
-    }
+// An immutable 2d tree, bulk loaded from coordinate arrays in a single pass. Every internal node
+// splits its points at the median of the axis with the larger spread, so the tree is balanced no
+// matter how the points are clustered. Leaves hold small buckets of points.
+//
+// Nodes are stored implicitly in flat arrays (the children of node i are 2i + 1 and 2i + 2), and
+// the points are reordered so that each leaf's bucket is a contiguous range. Since nothing is
+// modified after build(), a tree can be queried from any number of threads at once.
+public class KDTree2d implements SpatialIndex {
+  private static final int LEAF_SIZE = 8;
+  private static final byte LEAF = -1;
+  private static final byte X_AXIS = 0;
+  private static final byte Y_AXIS = 1;
+  // Points this close together are considered to be the same point
+  private static final double SAME_LOCATION_SQUARED = 0.00000001;
+
+  // -- Points, in bucket order --
+  private final int size_;
+  private final double[] xs_;
+  private final double[] ys_;
+  private final int[] tags_;
+  // Index of each point in the arrays passed to build()
+  private final int[] indices_;
+
+  // -- Nodes --
+  private final byte[] nodeAxis_;
+  private final double[] nodeSplit_;
+  private final int[] nodeStart_;
+  private final int[] nodeEnd_;
+
+  // Builds a tree over the first `count` points of xs/ys. Each point carries an integer tag that is
+  // handed back by queries. The input arrays are copied and may be reused after this returns.
+  public static KDTree2d build(double[] xs, double[] ys, int[] tags, int count) {
+    return new KDTree2d(xs, ys, tags, count);
   }
 
-  public class LocationAndData {
-    public Vector2d location_;
-    public T data_;
-
-    public LocationAndData(Vector2d location, T data) {
-      location_ = new Vector2d(location);
-      data_ = data;
-    }
-
-    public Vector2d getLocation() {
-      return new Vector2d(location_);
-    }
-
-    public T getData() {
-      return data_;
-    }
-  }
-
-  private TreeNode root_;
-
-  public KDTree2d() {
-    // root is null
+  public static KDTree2d empty() {
+    return new KDTree2d(new double[0], new double[0], new int[0], 0);
   }
 
-  public void clear() {
-    root_ = null;
+  private KDTree2d(double[] xs, double[] ys, int[] tags, int count) {
+    size_ = count;
+    xs_ = new double[count];
+    ys_ = new double[count];
+    tags_ = new int[count];
+    indices_ = new int[count];
+    System.arraycopy(xs, 0, xs_, 0, count);
+    System.arraycopy(ys, 0, ys_, 0, count);
+    System.arraycopy(tags, 0, tags_, 0, count);
+    for (int i = 0; i < count; i++) {
+      indices_[i] = i;
+    }
+
+    int depth = 0;
+    int pointsPerNode = count;
+    while (pointsPerNode > LEAF_SIZE) {
+      pointsPerNode = (pointsPerNode + 1) / 2;
+      depth++;
+    }
+    int numNodes = (1 << (depth + 1)) - 1;
+    nodeAxis_ = new byte[numNodes];
+    nodeSplit_ = new double[numNodes];
+    nodeStart_ = new int[numNodes];
+    nodeEnd_ = new int[numNodes];
+
+    if (count > 0) {
+      buildNode(0, 0, count);
+    }
   }
 
-  public void addLocation(Vector2d location, T data) {
-    if (root_ == null) {
-      root_ = new TreeNode(0, location, data);
+  private void buildNode(int node, int start, int end) {
+    nodeStart_[node] = start;
+    nodeEnd_[node] = end;
+    if (end - start <= LEAF_SIZE) {
+      nodeAxis_[node] = LEAF;
       return;
     }
 
-    int currDepth = 0;
-    TreeNode currNode = root_;
-    while (true) {
-      double newLocationComparator;
-      double currNodeLocationComparator;
-      if (currDepth % 2 == 0) // X
-      {
-        newLocationComparator = location.getX();
-        currNodeLocationComparator = currNode.getLocation().getX();
-      } else // Y
-      {
-        newLocationComparator = location.getY();
-        currNodeLocationComparator = currNode.getLocation().getY();
+    double minX = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int i = start; i < end; i++) {
+      minX = Math.min(minX, xs_[i]);
+      maxX = Math.max(maxX, xs_[i]);
+      minY = Math.min(minY, ys_[i]);
+      maxY = Math.max(maxY, ys_[i]);
+    }
+    byte axis = (maxX - minX) >= (maxY - minY) ? X_AXIS : Y_AXIS;
+    int mid = (start + end) >>> 1;
+    select(axis == X_AXIS ? xs_ : ys_, start, end - 1, mid);
+
+    nodeAxis_[node] = axis;
+    nodeSplit_[node] = (axis == X_AXIS ? xs_ : ys_)[mid];
+    buildNode((2 * node) + 1, start, mid);
+    buildNode((2 * node) + 2, mid, end);
+  }
+
+  // Quickselect on the inclusive range [left, right], so that afterwards every point before k has
+  // a coordinate <= coords[k] and every point after k has a coordinate >= coords[k]
+  private void select(double[] coords, int left, int right, int k) {
+    while (right > left) {
+      // Median of three pivot, to stay fast on already sorted input
+      int mid = (left + right) >>> 1;
+      if (coords[mid] < coords[left]) {
+        swap(mid, left);
+      }
+      if (coords[right] < coords[left]) {
+        swap(right, left);
+      }
+      if (coords[right] < coords[mid]) {
+        swap(right, mid);
       }
+      double pivot = coords[mid];
 
-      boolean lesser = newLocationComparator < currNodeLocationComparator;
-      TreeNode nextNode = lesser ? currNode.getLesser() : currNode.getGreater();
-      if (nextNode != null) {
-        currNode = nextNode;
-        currDepth++;
-        continue;
-      } else {
-        TreeNode newNode = new TreeNode(currDepth + 1, location, data);
-        if (lesser) {
-          currNode.setLesser(newNode);
-          return;
-        } else {
-          currNode.setGreater(newNode);
-          return;
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (coords[i] < pivot) {
+          i++;
+        }
+        while (coords[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
         }
       }
-    }
-  }
 
-  public Vector2d findNearestLocation(Vector2d location) {
-    if (root_ == null) {
-      return null;
-    }
-    TreeNodeAndDistanceSquared tn = findNearestHelper(location, false, root_, 100000000.0);
-    return tn.treeNode_.getLocation();
-  }
-
-  public Vector2d findNearestLocationExcludingSame(Vector2d location) {
-    if (root_ == null) {
-      return null;
-    }
-    return findNearestHelper(location, true, root_, 100000000.0).treeNode_.getLocation();
-  }
-
-  public LocationAndData findNearest(Vector2d location) {
-    if (root_ == null) {
-      return null;
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
     }
-    return findNearestHelper(location, false, root_, 100000000.0).treeNode_.toLocationAndData();
   }
 
-  public LocationAndData findNearestExcludingSame(Vector2d location) {
-    if (root_ == null) {
-      return null;
-    }
-    return findNearestHelper(location, true, root_, 100000000.0).treeNode_.toLocationAndData();
+  private void swap(int a, int b) {
+    double x = xs_[a];
+    xs_[a] = xs_[b];
+    xs_[b] = x;
+    double y = ys_[a];
+    ys_[a] = ys_[b];
+    ys_[b] = y;
+    int tag = tags_[a];
+    tags_[a] = tags_[b];
+    tags_[b] = tag;
+    int index = indices_[a];
+    indices_[a] = indices_[b];
+    indices_[b] = index;
   }
 
-  private class TreeNodeAndDistanceSquared {
-    public TreeNode treeNode_;
-    public double closestSquared_;
-
-    public TreeNodeAndDistanceSquared(TreeNode treeNode, double closestSquared) {
-      treeNode_ = treeNode;
-      closestSquared_ = closestSquared;
-    }
+  @Override
+  public int size() {
+    return size_;
   }
 
-  private TreeNodeAndDistanceSquared findNearestHelper(
-      Vector2d location, boolean excludingSame, TreeNode currNode, double currClosestSquared) {
-    assert currNode != null : "Null node passed to recursive function";
-
-    TreeNode closestNode = null;
-    double squareDistance = location.subtract(currNode.location_).normSquared();
-    if (squareDistance < currClosestSquared && (!excludingSame || squareDistance > 0.00000001)) {
-      closestNode = currNode;
-      currClosestSquared = squareDistance;
-    }
+  // Iterative, so that a query needs no recursion frames or result objects. Subtrees that might
+  // still hold a closer point are kept on the result's stack along with their distance from the
+  // query along the splitting axis.
+  @Override
+  public boolean findNearest(double x, double y, boolean excludingSame, NearestResult result) {
+    result.clear();
+    if (size_ == 0) {
+      return false;
+    }
+
+    int[] nodeStack = result.nodeStack_;
+    double[] boundStack = result.boundStack_;
+    int stackSize = 0;
+    nodeStack[stackSize] = 0;
+    boundStack[stackSize] = 0.0;
+    stackSize++;
+
+    int closest = -1;
+    double closestSquared = Double.POSITIVE_INFINITY;
+    while (stackSize > 0) {
+      stackSize--;
+      int node = nodeStack[stackSize];
+      if (boundStack[stackSize] >= closestSquared) {
+        continue;
+      }
 
-    double border =
-        ((currNode.getDepth() % 2) == 0)
-            ? currNode.getLocation().getX()
-            : currNode.getLocation().getY();
-    double locationDimension = ((currNode.getDepth() % 2) == 0) ? location.getX() : location.getY();
-    double squareDistanceFromBorder = Math.pow(locationDimension - border, 2.0);
-
-    if (locationDimension < border || squareDistanceFromBorder < currClosestSquared) {
-      if (currNode.getLesser() != null) {
-        TreeNodeAndDistanceSquared lesserNode =
-            findNearestHelper(location, excludingSame, currNode.getLesser(), currClosestSquared);
-        if (lesserNode != null) {
-          closestNode = lesserNode.treeNode_;
-          currClosestSquared = lesserNode.closestSquared_;
+      // Walk down to the leaf on the query's side, remembering the far side of each split
+      byte axis = nodeAxis_[node];
+      while (axis != LEAF) {
+        double distanceFromBorder = (axis == X_AXIS ? x : y) - nodeSplit_[node];
+        int lesser = (2 * node) + 1;
+        int greater = (2 * node) + 2;
+        double squareDistanceFromBorder = distanceFromBorder * distanceFromBorder;
+        if (squareDistanceFromBorder < closestSquared) {
+          nodeStack[stackSize] = distanceFromBorder < 0 ? greater : lesser;
+          boundStack[stackSize] = squareDistanceFromBorder;
+          stackSize++;
         }
+        node = distanceFromBorder < 0 ? lesser : greater;
+        axis = nodeAxis_[node];
       }
-    }
 
-    if (locationDimension > border || squareDistanceFromBorder < currClosestSquared) {
-      if (currNode.getGreater() != null) {
-        TreeNodeAndDistanceSquared greaterNode =
-            findNearestHelper(location, excludingSame, currNode.getGreater(), currClosestSquared);
-        if (greaterNode != null) {
-          closestNode = greaterNode.treeNode_;
-          currClosestSquared = greaterNode.closestSquared_;
+      for (int i = nodeStart_[node]; i < nodeEnd_[node]; i++) {
+        double dx = xs_[i] - x;
+        double dy = ys_[i] - y;
+        double squareDistance = (dx * dx) + (dy * dy);
+        if (squareDistance < closestSquared
+            && (!excludingSame || squareDistance > SAME_LOCATION_SQUARED)) {
+          closest = i;
+          closestSquared = squareDistance;
         }
       }
     }
 
-    return closestNode == null
-        ? null
-        : new TreeNodeAndDistanceSquared(closestNode, currClosestSquared);
+    if (closest < 0) {
+      return false;
+    }
+    result.set(indices_[closest], tags_[closest], xs_[closest], ys_[closest], closestSquared);
+    return true;
   }
 
   @Override
   public String toString() {
-    if (root_ == null) {
+    if (size_ == 0) {
       return "Empty Tree";
     }
 
     String s = "";
-    LinkedList<TreeNode> currLayer = new LinkedList<>();
-    LinkedList<TreeNode> nextLayer = new LinkedList<>();
-    nextLayer.add(root_);
-    while (!nextLayer.isEmpty()) {
-      currLayer = new LinkedList<>(nextLayer);
-      nextLayer.clear();
-      while (!currLayer.isEmpty()) {
-        TreeNode node = currLayer.pop();
-        s += (node.getLocation() + " ");
-        if (node.getLesser() != null) {
-          nextLayer.add(node.getLesser());
-        }
-        if (node.getGreater() != null) {
-          nextLayer.add(node.getGreater());
-        }
+    for (int node = 0; node < nodeAxis_.length; node++) {
+      if (nodeAxis_[node] != LEAF || nodeEnd_[node] == nodeStart_[node]) {
+        continue;
+      }
+      for (int i = nodeStart_[node]; i < nodeEnd_[node]; i++) {
+        s += (new Vector2d(xs_[i], ys_[i]) + " ");
       }
       s += "\n";
     }
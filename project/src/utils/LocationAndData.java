@@ -0,0 +1,27 @@
+package utils;
+
+// A point found in a SpatialIndex
+public class LocationAndData {
+  private final Vector2d location_;
+  private final int index_;
+  private final int tag_;
+
+  public LocationAndData(double x, double y, int index, int tag) {
+    location_ = new Vector2d(x, y);
+    index_ = index;
+    tag_ = tag;
+  }
+
+  public Vector2d getLocation() {
+    return new Vector2d(location_);
+  }
+
+  // The index the point had in the arrays the index was built from
+  public int getIndex() {
+    return index_;
+  }
+
+  public int getTag() {
+    return tag_;
+  }
+}
@@ -0,0 +1,60 @@
+package utils;
+
+// Caller-owned result of a primitive SpatialIndex query. A holder is meant to be reused for many
+// queries by one thread, so that the query path allocates nothing.
+public class NearestResult {
+  // Deep enough for any balanced tree that fits in an int-indexed array
+  private static final int MAX_STACK_DEPTH = 64;
+
+  // While nothing is found: no index or tag, no location, and infinitely far away
+  private int index_ = -1;
+  private int tag_ = -1;
+  private double x_ = Double.NaN;
+  private double y_ = Double.NaN;
+  private double distanceSquared_ = Double.POSITIVE_INFINITY;
+
+  // Scratch space for indexes that need an explicit traversal stack
+  final int[] nodeStack_ = new int[MAX_STACK_DEPTH];
+  final double[] boundStack_ = new double[MAX_STACK_DEPTH];
+
+  void clear() {
+    index_ = -1;
+    tag_ = -1;
+    x_ = Double.NaN;
+    y_ = Double.NaN;
+    distanceSquared_ = Double.POSITIVE_INFINITY;
+  }
+
+  void set(int index, int tag, double x, double y, double distanceSquared) {
+    index_ = index;
+    tag_ = tag;
+    x_ = x;
+    y_ = y;
+    distanceSquared_ = distanceSquared;
+  }
+
+  public boolean isFound() {
+    return index_ >= 0;
+  }
+
+  // The index the point had in the arrays the index was built from
+  public int getIndex() {
+    return index_;
+  }
+
+  public int getTag() {
+    return tag_;
+  }
+
+  public double getX() {
+    return x_;
+  }
+
+  public double getY() {
+    return y_;
+  }
+
+  public double getDistanceSquared() {
+    return distanceSquared_;
+  }
+}
@@ -0,0 +1,146 @@
+package utils;
+
+import java.util.Arrays;
+
+// Tracks which parts of the board are free for a new bug. The board is split into square cells as
+// wide as the minimum distance between bugs, and a cell is free when neither it nor any of its
+// eight neighbors holds a bug. Any point in a free cell is then at least the minimum distance from
+// every bug, so a free location can be found by picking a free cell, in O(1), instead of guessing
+// and checking.
+//
+// Free cells are a conservative view of the free space: a point can be far enough from every bug
+// without its cell being free.
+public class OccupancyGrid {
+  private double width_;
+  private double height_;
+  private double cellSize_;
+  private int columns_;
+  private int rows_;
+  // Number of points in each cell's 3x3 neighborhood
+  private int[] neighborhoodCounts_ = new int[0];
+  // Every free cell, in no particular order, and where each cell is in that list (or -1)
+  private int[] freeCells_ = new int[0];
+  private int[] freeCellPositions_ = new int[0];
+  private int numFreeCells_;
+
+  // Replaces the contents of the grid with the first `count` points of xs/ys, on a board of the
+  // given size. Takes O(count + number of cells).
+  public void build(
+      double[] xs, double[] ys, int count, double width, double height, double minDistance) {
+    width_ = width;
+    height_ = height;
+    cellSize_ = minDistance;
+    columns_ = Math.max(1, (int) Math.ceil(width / minDistance));
+    rows_ = Math.max(1, (int) Math.ceil(height / minDistance));
+    int numCells = columns_ * rows_;
+    if (neighborhoodCounts_.length < numCells) {
+      neighborhoodCounts_ = new int[numCells];
+      freeCells_ = new int[numCells];
+      freeCellPositions_ = new int[numCells];
+    }
+
+    Arrays.fill(neighborhoodCounts_, 0, numCells, 0);
+    for (int i = 0; i < count; i++) {
+      addToNeighborhood(getColumn(xs[i]), getRow(ys[i]), false);
+    }
+
+    numFreeCells_ = 0;
+    for (int cell = 0; cell < numCells; cell++) {
+      if (neighborhoodCounts_[cell] == 0) {
+        freeCellPositions_[cell] = numFreeCells_;
+        freeCells_[numFreeCells_++] = cell;
+      } else {
+        freeCellPositions_[cell] = -1;
+      }
+    }
+  }
+
+  public int getNumFreeCells() {
+    return numFreeCells_;
+  }
+
+  // Marks the space around a newly placed point as taken
+  public void add(double x, double y) {
+    addToNeighborhood(getColumn(x), getRow(y), true);
+  }
+
+  private void addToNeighborhood(int column, int row, boolean updateFreeCells) {
+    for (int r = Math.max(0, row - 1); r <= Math.min(rows_ - 1, row + 1); r++) {
+      for (int c = Math.max(0, column - 1); c <= Math.min(columns_ - 1, column + 1); c++) {
+        int cell = (r * columns_) + c;
+        if (neighborhoodCounts_[cell]++ == 0 && updateFreeCells) {
+          removeFreeCell(cell);
+        }
+      }
+    }
+  }
+
+  private void removeFreeCell(int cell) {
+    int position = freeCellPositions_[cell];
+    int last = freeCells_[--numFreeCells_];
+    freeCells_[position] = last;
+    freeCellPositions_[last] = position;
+    freeCellPositions_[cell] = -1;
+  }
+
+  private int getColumn(double x) {
+    return Math.max(0, Math.min(columns_ - 1, (int) (x / cellSize_)));
+  }
+
+  private int getRow(double y) {
+    return Math.max(0, Math.min(rows_ - 1, (int) (y / cellSize_)));
+  }
+
+  // A random point in a random free cell, or null if no cell is free
+  public Vector2d findFreeLocation(RandomStream random) {
+    if (numFreeCells_ == 0) {
+      return null;
+    }
+    return randomPointIn(freeCells_[random.nextInt(numFreeCells_)], random);
+  }
+
+  // A random point in one of the free cells closest to (x, y), searching outward one ring of cells
+  // at a time, or null if no cell is free
+  public Vector2d findFreeLocationNear(double x, double y, RandomStream random) {
+    if (numFreeCells_ == 0) {
+      return null;
+    }
+    int column = getColumn(x);
+    int row = getRow(y);
+    int maxRing = Math.max(columns_, rows_);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // Pick uniformly among the free cells of the ring, in one pass
+      int chosen = -1;
+      int numFree = 0;
+      for (int r = row - ring; r <= row + ring; r++) {
+        if (r < 0 || r >= rows_) {
+          continue;
+        }
+        // Only the first and last rows of the ring are full; the others just have their ends
+        int step = (r == row - ring || r == row + ring) ? 1 : Math.max(1, 2 * ring);
+        for (int c = column - ring; c <= column + ring; c += step) {
+          if (c < 0 || c >= columns_) {
+            continue;
+          }
+          int cell = (r * columns_) + c;
+          if (neighborhoodCounts_[cell] == 0 && random.nextInt(++numFree) == 0) {
+            chosen = cell;
+          }
+        }
+      }
+      if (chosen >= 0) {
+        return randomPointIn(chosen, random);
+      }
+    }
+    return null;
+  }
+
+  // Cells on the far edges can hang off the board, so only pick from the part that is on it
+  private Vector2d randomPointIn(int cell, RandomStream random) {
+    double left = (cell % columns_) * cellSize_;
+    double top = (cell / columns_) * cellSize_;
+    return new Vector2d(
+        left + (random.nextDouble() * Math.min(cellSize_, width_ - left)),
+        top + (random.nextDouble() * Math.min(cellSize_, height_ - top)));
+  }
+}
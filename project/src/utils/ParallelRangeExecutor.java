@@ -0,0 +1,85 @@
+package utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs a body over [0, size) by recursively halving the range on a fork-join pool until pieces are
+// no larger than the grain size. The caller blocks once, until every piece has finished.
+//
+// Each piece can be recorded by Java Flight Recorder as a RangeChunkEvent, labelled with the phase
+// passed to forRange().
+public class ParallelRangeExecutor {
+  public interface RangeBody {
+    // Handles the half-open range [start, end)
+    void run(int start, int end);
+  }
+
+  private final ForkJoinPool pool_;
+  private final int grainSize_;
+
+  public ParallelRangeExecutor(int grainSize) {
+    this(ForkJoinPool.commonPool(), grainSize);
+  }
+
+  public ParallelRangeExecutor(ForkJoinPool pool, int grainSize) {
+    assert grainSize > 0 : "Grain size must be positive";
+    pool_ = pool;
+    grainSize_ = grainSize;
+  }
+
+  public int getGrainSize() {
+    return grainSize_;
+  }
+
+  private static void runPiece(String phase, RangeBody body, int start, int end) {
+    RangeChunkEvent event = new RangeChunkEvent();
+    event.begin();
+    body.run(start, end);
+    event.end();
+    if (event.shouldCommit()) {
+      event.phase = phase;
+      event.start = start;
+      event.end = end;
+      event.commit();
+    }
+  }
+
+  private class RangeAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final String phase_;
+    private final RangeBody body_;
+    private final int start_;
+    private final int end_;
+
+    private RangeAction(String phase, RangeBody body, int start, int end) {
+      phase_ = phase;
+      body_ = body;
+      start_ = start;
+      end_ = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end_ - start_ <= grainSize_) {
+        runPiece(phase_, body_, start_, end_);
+        return;
+      }
+      int mid = (start_ + end_) >>> 1;
+      invokeAll(
+          new RangeAction(phase_, body_, start_, mid), new RangeAction(phase_, body_, mid, end_));
+    }
+  }
+
+  // phase names the work in flight recordings, e.g. "sense"
+  public void forRange(String phase, int size, RangeBody body) {
+    if (size <= 0) {
+      return;
+    }
+    if (size <= grainSize_) {
+      // Not worth a trip through the pool
+      runPiece(phase, body, 0, size);
+      return;
+    }
+    pool_.invoke(new RangeAction(phase, body, 0, size));
+  }
+}
@@ -0,0 +1,80 @@
+package utils;
+
+// A small, fast pseudo random number generator (SplitMix64, the algorithm behind
+// java.util.SplittableRandom). Unlike java.util.Random, a stream has no synchronization at all, so
+// it must only be used by one thread at a time. Give each thread or task its own stream instead of
+// sharing one.
+//
+// Streams form a hierarchy: derive() creates an independent child stream from a key. A child
+// depends only on its parent's seed and the key, not on how much of the parent has been used, so
+// children can be created in any order and on any thread, and a run started from the same seed
+// always produces the same numbers.
+public class RandomStream {
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+  private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+  private final long seed_;
+  private long state_;
+
+  public RandomStream(long seed) {
+    this(seed, seed);
+  }
+
+  // Picks up a stream where getSeed() and getState() left off, e.g. when resuming from a checkpoint
+  public RandomStream(long seed, long state) {
+    seed_ = seed;
+    state_ = state;
+  }
+
+  // A seed that differs from run to run, for when no seed was asked for
+  public static long randomSeed() {
+    return mix64(System.nanoTime() ^ mix64(System.currentTimeMillis()));
+  }
+
+  // Stafford's variant 13 of the MurmurHash3 finalizer, as used by SplittableRandom
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  public long getSeed() {
+    return seed_;
+  }
+
+  // How far along the stream is. Together with the seed, enough to recreate the stream exactly.
+  public long getState() {
+    return state_;
+  }
+
+  public RandomStream derive(long key) {
+    return new RandomStream(mix64(seed_ ^ mix64(key + GOLDEN_GAMMA)));
+  }
+
+  public long nextLong() {
+    state_ += GOLDEN_GAMMA;
+    return mix64(state_);
+  }
+
+  // Uniform in [0, 1)
+  public double nextDouble() {
+    return (nextLong() >>> 11) * DOUBLE_UNIT;
+  }
+
+  // Uniform in [0, bound)
+  public int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive");
+    }
+    int max = bound - 1;
+    int r = (int) (nextLong() >>> 33);
+    if ((bound & max) == 0) {
+      // Power of two
+      return r & max;
+    }
+    // Reject the values past the last full multiple of bound, so that every result is equally
+    // likely
+    for (int u = r; u - (r = u % bound) + max < 0; u = (int) (nextLong() >>> 33)) {}
+    return r;
+  }
+}
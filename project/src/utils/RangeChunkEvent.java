@@ -0,0 +1,29 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// One piece of a ParallelRangeExecutor.forRange() call, as run by a single worker thread, recorded
+// by Java Flight Recorder. There are many of these per tick, so by default only pieces slower than
+// the threshold are recorded: those are the stragglers that hold up the join. Lower the threshold
+// in the recording settings to see every piece.
+@Name("neuralnodes.RangeChunk")
+@Label("Range Chunk")
+@Category("NeuralNodes")
+@StackTrace(false)
+@Description("A grain-sized piece of a parallel phase, run on one worker thread")
+@Threshold("1 ms")
+class RangeChunkEvent extends jdk.jfr.Event {
+  @Label("Phase")
+  String phase;
+
+  @Label("Start")
+  int start;
+
+  @Label("End")
+  int end;
+}
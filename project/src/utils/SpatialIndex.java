@@ -0,0 +1,38 @@
+package utils;
+
+// A read-only index over a set of tagged 2d points, answering nearest neighbor queries. Indexes
+// are built in bulk from coordinate arrays (see KDTree2d.build and UniformGrid2d.build) and are
+// safe to query from many threads at once.
+public interface SpatialIndex {
+  int size();
+
+  // Finds the point nearest to (x, y) and writes it into `result`, which is cleared first. With
+  // excludingSame, any point at the same location as (x, y) is ignored. Returns whether a point
+  // was found. Allocates nothing.
+  boolean findNearest(double x, double y, boolean excludingSame, NearestResult result);
+
+  // Returns null if the index is empty
+  default LocationAndData findNearest(Vector2d location) {
+    return findNearestHelper(location, false);
+  }
+
+  // Ignores any point at the same location as `location`. Returns null if there is no other point.
+  default LocationAndData findNearestExcludingSame(Vector2d location) {
+    return findNearestHelper(location, true);
+  }
+
+  // Returns null if the index is empty
+  default Vector2d findNearestLocation(Vector2d location) {
+    LocationAndData nearest = findNearest(location);
+    return nearest == null ? null : nearest.getLocation();
+  }
+
+  private LocationAndData findNearestHelper(Vector2d location, boolean excludingSame) {
+    NearestResult result = new NearestResult();
+    if (!findNearest(location.getX(), location.getY(), excludingSame, result)) {
+      return null;
+    }
+    return new LocationAndData(
+        result.getX(), result.getY(), result.getIndex(), result.getTag());
+  }
+}
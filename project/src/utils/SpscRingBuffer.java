@@ -0,0 +1,66 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// A bounded queue for handing items from exactly one producer thread to exactly one consumer
+// thread, without locks. offer() and poll() never block: offer() fails when the queue is full and
+// poll() returns null when it is empty.
+//
+// Each side only writes its own counter, and publishes it with an ordered store, so the other side
+// sees the slot filled (or emptied) before it sees the counter move.
+public class SpscRingBuffer<T> {
+  private final Object[] slots_;
+  private final int mask_;
+  // Next position to read. Only written by the consumer.
+  private final AtomicLong head_ = new AtomicLong();
+  // Next position to write. Only written by the producer.
+  private final AtomicLong tail_ = new AtomicLong();
+  // The producer's last look at head_, so that it only reads the consumer's counter when the queue
+  // seems full
+  private long cachedHead_;
+
+  // Holds up to capacity items, rounded up to a power of two
+  public SpscRingBuffer(int capacity) {
+    assert capacity > 0 : "Capacity must be positive";
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+    slots_ = new Object[size];
+    mask_ = size - 1;
+  }
+
+  public int capacity() {
+    return slots_.length;
+  }
+
+  // Producer only. Returns false, without adding item, if the queue is full.
+  public boolean offer(T item) {
+    long tail = tail_.get();
+    if (tail - cachedHead_ >= slots_.length) {
+      cachedHead_ = head_.get();
+      if (tail - cachedHead_ >= slots_.length) {
+        return false;
+      }
+    }
+    slots_[(int) tail & mask_] = item;
+    tail_.lazySet(tail + 1);
+    return true;
+  }
+
+  // Consumer only. Returns null if the queue is empty.
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long head = head_.get();
+    if (head >= tail_.get()) {
+      return null;
+    }
+    int slot = (int) head & mask_;
+    T item = (T) slots_[slot];
+    slots_[slot] = null;
+    head_.lazySet(head + 1);
+    return item;
+  }
+
+  // Either thread. Only a hint, as the other thread may be changing it.
+  public boolean isEmpty() {
+    return head_.get() >= tail_.get();
+  }
+}
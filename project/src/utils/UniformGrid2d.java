@@ -0,0 +1,169 @@
+package utils;
+
+// An immutable uniform grid over a set of tagged 2d points. Points are bucketed into square cells
+// with a counting sort, so building is linear in the number of points, and each cell's points end
+// up contiguous in memory. Nearest neighbor queries search outwards from the query's cell one ring
+// of cells at a time, which is very fast when points are spread evenly and the cell size is close
+// to the typical distance between neighbors.
+public class UniformGrid2d implements SpatialIndex {
+  // Points this close together are considered to be the same point
+  private static final double SAME_LOCATION_SQUARED = 0.00000001;
+  // Keeps sparse point sets from allocating huge, mostly empty grids
+  private static final int MAX_CELLS_PER_POINT = 4;
+
+  // -- Points, sorted by cell --
+  private final int size_;
+  private final double[] xs_;
+  private final double[] ys_;
+  private final int[] tags_;
+  // Index of each point in the arrays passed to build()
+  private final int[] indices_;
+
+  // -- Cells --
+  private final double minX_;
+  private final double minY_;
+  private final double cellSize_;
+  private final int columns_;
+  private final int rows_;
+  // Points of cell c are [cellStart_[c], cellStart_[c + 1])
+  private final int[] cellStart_;
+
+  // Builds a grid over the first `count` points of xs/ys. Each point carries an integer tag that is
+  // handed back by queries. The input arrays are copied and may be reused after this returns.
+  public static UniformGrid2d build(
+      double[] xs, double[] ys, int[] tags, int count, double cellSize) {
+    return new UniformGrid2d(xs, ys, tags, count, cellSize);
+  }
+
+  private UniformGrid2d(double[] xs, double[] ys, int[] tags, int count, double cellSize) {
+    assert cellSize > 0 : "Cell size must be positive";
+    size_ = count;
+
+    double minX = 0;
+    double maxX = 0;
+    double minY = 0;
+    double maxY = 0;
+    if (count > 0) {
+      minX = Double.POSITIVE_INFINITY;
+      maxX = Double.NEGATIVE_INFINITY;
+      minY = Double.POSITIVE_INFINITY;
+      maxY = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < count; i++) {
+        minX = Math.min(minX, xs[i]);
+        maxX = Math.max(maxX, xs[i]);
+        minY = Math.min(minY, ys[i]);
+        maxY = Math.max(maxY, ys[i]);
+      }
+    }
+
+    long maxCells = ((long) MAX_CELLS_PER_POINT * count) + 1;
+    while (cellCount(maxX - minX, cellSize) * cellCount(maxY - minY, cellSize) > maxCells) {
+      cellSize *= 2.0;
+    }
+    minX_ = minX;
+    minY_ = minY;
+    cellSize_ = cellSize;
+    columns_ = (int) cellCount(maxX - minX, cellSize);
+    rows_ = (int) cellCount(maxY - minY, cellSize);
+
+    // Counting sort by cell
+    int numCells = columns_ * rows_;
+    cellStart_ = new int[numCells + 1];
+    int[] cellOfPoint = new int[count];
+    for (int i = 0; i < count; i++) {
+      int cell = cellOf(xs[i], ys[i]);
+      cellOfPoint[i] = cell;
+      cellStart_[cell + 1]++;
+    }
+    for (int cell = 0; cell < numCells; cell++) {
+      cellStart_[cell + 1] += cellStart_[cell];
+    }
+
+    xs_ = new double[count];
+    ys_ = new double[count];
+    tags_ = new int[count];
+    indices_ = new int[count];
+    int[] nextInCell = new int[numCells];
+    System.arraycopy(cellStart_, 0, nextInCell, 0, numCells);
+    for (int i = 0; i < count; i++) {
+      int sorted = nextInCell[cellOfPoint[i]]++;
+      xs_[sorted] = xs[i];
+      ys_[sorted] = ys[i];
+      tags_[sorted] = tags[i];
+      indices_[sorted] = i;
+    }
+  }
+
+  private static long cellCount(double extent, double cellSize) {
+    return (long) (extent / cellSize) + 1;
+  }
+
+  private int columnOf(double x) {
+    return Math.max(0, Math.min(columns_ - 1, (int) ((x - minX_) / cellSize_)));
+  }
+
+  private int rowOf(double y) {
+    return Math.max(0, Math.min(rows_ - 1, (int) ((y - minY_) / cellSize_)));
+  }
+
+  private int cellOf(double x, double y) {
+    return (rowOf(y) * columns_) + columnOf(x);
+  }
+
+  @Override
+  public int size() {
+    return size_;
+  }
+
+  @Override
+  public boolean findNearest(double x, double y, boolean excludingSame, NearestResult result) {
+    result.clear();
+    if (size_ == 0) {
+      return false;
+    }
+    int column = columnOf(x);
+    int row = rowOf(y);
+
+    int closest = -1;
+    double closestSquared = Double.POSITIVE_INFINITY;
+    int maxRing = Math.max(columns_, rows_);
+    for (int ring = 0; ring <= maxRing; ring++) {
+      // Every cell in this ring is at least (ring - 1) cells away from the query, so once the best
+      // point so far is closer than that nothing further out can beat it
+      double ringDistance = (ring - 1) * cellSize_;
+      if (ring > 0 && closestSquared <= ringDistance * ringDistance) {
+        break;
+      }
+
+      int minRow = Math.max(0, row - ring);
+      int maxRow = Math.min(rows_ - 1, row + ring);
+      for (int r = minRow; r <= maxRow; r++) {
+        boolean edgeRow = (r == row - ring) || (r == row + ring);
+        // Middle rows of the ring only have the two cells on its left and right edges
+        int columnStep = edgeRow ? 1 : Math.max(1, 2 * ring);
+        for (int c = column - ring; c <= column + ring; c += columnStep) {
+          if (c < 0 || c >= columns_) {
+            continue;
+          }
+          int cell = (r * columns_) + c;
+          for (int i = cellStart_[cell]; i < cellStart_[cell + 1]; i++) {
+            double dx = xs_[i] - x;
+            double dy = ys_[i] - y;
+            double squareDistance = (dx * dx) + (dy * dy);
+            if (squareDistance < closestSquared
+                && (!excludingSame || squareDistance > SAME_LOCATION_SQUARED)) {
+              closest = i;
+              closestSquared = squareDistance;
+            }
+          }
+        }
+      }
+    }
+
+    if (closest < 0) {
+      return false;
+    }
+    result.set(indices_[closest], tags_[closest], xs_[closest], ys_[closest], closestSquared);
+    return true;
+  }
+}
@@ -0,0 +1,123 @@
+package utils;
+
+import java.util.Arrays;
+
+// Picks indices at random, with odds proportional to a weight per index. Weights are kept in a
+// Fenwick tree, so both picking an index and changing a weight take O(log n).
+//
+// Build it once from an array of weights, then draw as many samples as needed. Indices with a
+// weight of zero are never picked.
+public class WeightedSampler {
+  private int size_;
+  private double[] weights_ = new double[0];
+  // tree_[i] (1-based) holds the sum of the weights of indices (i - lowbit(i), i]
+  private double[] tree_ = new double[1];
+  // Number of indices with a weight above zero
+  private int numPositive_;
+  // Largest power of two <= size_, where the descent in sample() starts
+  private int topBit_;
+
+  // Replaces the weights with the first `count` values of `weights`. Negative weights count as
+  // zero. Takes O(count).
+  public void build(double[] weights, int count) {
+    if (weights_.length < count) {
+      weights_ = new double[count];
+      tree_ = new double[count + 1];
+    }
+    size_ = count;
+    numPositive_ = 0;
+    Arrays.fill(tree_, 0, count + 1, 0.0);
+    for (int i = 0; i < count; i++) {
+      weights_[i] = Math.max(0.0, weights[i]);
+      if (weights_[i] > 0.0) {
+        numPositive_++;
+      }
+      int node = i + 1;
+      tree_[node] += weights_[i];
+      int parent = node + Integer.lowestOneBit(node);
+      if (parent <= count) {
+        tree_[parent] += tree_[node];
+      }
+    }
+    topBit_ = count == 0 ? 0 : Integer.highestOneBit(count);
+  }
+
+  public int size() {
+    return size_;
+  }
+
+  public double getWeight(int index) {
+    return weights_[index];
+  }
+
+  public void setWeight(int index, double weight) {
+    weight = Math.max(0.0, weight);
+    double delta = weight - weights_[index];
+    if (weights_[index] > 0.0) {
+      numPositive_--;
+    }
+    if (weight > 0.0) {
+      numPositive_++;
+    }
+    weights_[index] = weight;
+    for (int node = index + 1; node <= size_; node += Integer.lowestOneBit(node)) {
+      tree_[node] += delta;
+    }
+  }
+
+  public double getTotalWeight() {
+    double total = 0.0;
+    for (int node = size_; node > 0; node -= Integer.lowestOneBit(node)) {
+      total += tree_[node];
+    }
+    return total;
+  }
+
+  // Picks an index with odds proportional to its weight, or returns -1 if every weight is zero
+  public int sample(RandomStream random) {
+    if (numPositive_ == 0) {
+      return -1;
+    }
+    double target = random.nextDouble() * getTotalWeight();
+
+    // Find the first index whose running total of weights is past target
+    int node = 0;
+    for (int bit = topBit_; bit != 0; bit >>= 1) {
+      int next = node + bit;
+      if (next <= size_ && tree_[next] <= target) {
+        node = next;
+        target -= tree_[next];
+      }
+    }
+
+    // Rounding in the tree can land just past the end, or on an index whose weight was zeroed.
+    // Step to the nearest index that can actually be picked; there is at least one.
+    int index = Math.min(node, size_ - 1);
+    while (index > 0 && weights_[index] <= 0.0) {
+      index--;
+    }
+    while (weights_[index] <= 0.0) {
+      index++;
+    }
+    return index;
+  }
+
+  // Picks two different indices, each with odds proportional to its weight, the second from
+  // everything except the first. Returns false if there are not two indices with weight.
+  public boolean samplePair(RandomStream random, int[] pair) {
+    int first = sample(random);
+    if (first < 0) {
+      return false;
+    }
+    double firstWeight = weights_[first];
+    setWeight(first, 0.0);
+    int second = sample(random);
+    setWeight(first, firstWeight);
+    if (second < 0) {
+      return false;
+    }
+    pair[0] = first;
+    pair[1] = second;
+    return true;
+  }
+}